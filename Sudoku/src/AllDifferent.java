@@ -0,0 +1,429 @@
+import java.util.List;
+
+/**
+ * Filtering for the all-different constraint represented by a Constraint.
+ *
+ * Phase 1 is the cheap subset reasoning: a value with a single place left
+ * in the constraint is assigned there (hidden single), and two variables
+ * sharing the same two values remove them from everyone else (naked pair).
+ *
+ * Phase 2 is Regin's algorithm. It computes a maximum matching between the
+ * variables and their values and removes every value that belongs to no
+ * maximum matching, which makes the constraint generalized arc consistent.
+ * It is skipped when the propagator runs in subset mode only.
+ */
+
+public class AllDifferent
+{
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	private Trail trail;
+	private boolean useMatching;
+
+	// Told about every pruned value, reported as propagator
+	private SolverListener listener;
+	private int propagator;
+
+	// Scratch space, reused across calls. Variables are indexed by their
+	// position in the constraint, values by value - 1.
+	private Variable[] vars = new Variable[0];
+	private boolean[] pushed = new boolean[0];
+	private int[] varMatch = new int[0];
+
+	private int[] valCount = new int[0];
+	private int[] valHolder = new int[0];
+	private int[] valMatch = new int[0];
+	private int[] valSeen = new int[0];
+	private int seenStamp = 0;
+
+	// Tarjan's strongly connected components over vars + values
+	private int[] index = new int[0];
+	private int[] low = new int[0];
+	private int[] component = new int[0];
+	private int[] stack = new int[0];
+	private boolean[] onStack = new boolean[0];
+	private boolean[] reachesFree = new boolean[0];
+	private int counter, stackSize, componentCount;
+
+	private int k; // number of variables in the constraint
+	private int m; // largest value in any of their domains
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	public AllDifferent ( Trail trail, boolean useMatching )
+	{
+		this.trail = trail;
+		this.useMatching = useMatching;
+	}
+
+	// =================================================================
+	// Modifiers
+	// =================================================================
+
+	public void setSolverListener ( SolverListener listener )
+	{
+		this.listener = listener;
+	}
+
+	// =================================================================
+	// Propagation
+	// =================================================================
+
+	/**
+	 * Prunes the domains of the variables in c.
+	 *
+	 * Every variable is pushed on the trail before its first change and
+	 * added to changed.
+	 *
+	 * Return: false if c cannot be satisfied anymore, true otherwise
+	 */
+	public boolean propagate ( Constraint c, List<Variable> changed )
+	{
+		load( c );
+
+		propagator = SolverListener.ALLDIFF_SUBSETS;
+		if ( ! pruneSubsets( changed ) )
+			return false;
+
+		propagator = SolverListener.ALLDIFF_MATCHING;
+		if ( useMatching && ! pruneMatching( changed ) )
+			return false;
+
+		return true;
+	}
+
+	// Phase 1: hidden singles and naked pairs
+	private boolean pruneSubsets ( List<Variable> changed )
+	{
+		int union = 0;
+		for ( int a = 0; a < m; ++a )
+		{
+			valCount[a] = 0;
+			valHolder[a] = -1;
+		}
+
+		for ( int x = 0; x < k; ++x )
+		{
+			Domain d = vars[x].getDomain();
+			if ( d.isEmpty() )
+				return false;
+
+			for ( int a = d.first(); a != 0; a = d.next( a ) )
+			{
+				if ( valCount[a - 1]++ == 0 )
+					union++;
+				valHolder[a - 1] = x;
+			}
+		}
+
+		// Hall's condition on the whole constraint
+		if ( union < k )
+			return false;
+
+		// With as many values as variables, every value has to be used
+		if ( union == k )
+		{
+			for ( int a = 0; a < m; ++a )
+			{
+				if ( valCount[a] != 1 )
+					continue;
+
+				Variable v = vars[valHolder[a]];
+				Domain d = v.getDomain();
+				for ( int b = d.first(); b != 0; b = d.next( b ) )
+					if ( b != a + 1 && ! removeValue( valHolder[a], b, changed ) )
+						return false;
+			}
+		}
+
+		for ( int x = 0; x < k; ++x )
+		{
+			Domain dx = vars[x].getDomain();
+			if ( dx.size() != 2 )
+				continue;
+
+			int a = dx.first();
+			int b = dx.next( a );
+
+			for ( int y = x + 1; y < k; ++y )
+			{
+				Domain dy = vars[y].getDomain();
+				if ( dy.size() != 2 || ! dy.contains( a ) || ! dy.contains( b ) )
+					continue;
+
+				for ( int z = 0; z < k; ++z )
+				{
+					if ( z == x || z == y )
+						continue;
+
+					if ( ! removeValue( z, a, changed ) || ! removeValue( z, b, changed ) )
+						return false;
+				}
+				break;
+			}
+		}
+
+		return true;
+	}
+
+	// Phase 2: Regin's matching based filtering
+	private boolean pruneMatching ( List<Variable> changed )
+	{
+		if ( ! findMaximumMatching() )
+			return false;
+
+		// Values that can reach a free value along an alternating path
+		for ( int node = 0; node < k + m; ++node )
+			reachesFree[node] = false;
+
+		int head = 0, tail = 0;
+		for ( int a = 0; a < m; ++a )
+		{
+			if ( valMatch[a] < 0 && valCount[a] > 0 )
+			{
+				reachesFree[k + a] = true;
+				stack[tail++] = k + a;
+			}
+		}
+
+		while ( head < tail )
+		{
+			int node = stack[head++];
+			if ( node < k )
+			{
+				int a = varMatch[node] - 1;
+				if ( ! reachesFree[k + a] )
+				{
+					reachesFree[k + a] = true;
+					stack[tail++] = k + a;
+				}
+				continue;
+			}
+
+			int value = node - k + 1;
+			for ( int x = 0; x < k; ++x )
+			{
+				if ( ! reachesFree[x] && varMatch[x] != value && vars[x].getDomain().contains( value ) )
+				{
+					reachesFree[x] = true;
+					stack[tail++] = x;
+				}
+			}
+		}
+
+		// Strongly connected components of the residual graph
+		for ( int node = 0; node < k + m; ++node )
+		{
+			index[node] = -1;
+			onStack[node] = false;
+		}
+		counter = stackSize = componentCount = 0;
+
+		for ( int node = 0; node < k + m; ++node )
+			if ( index[node] < 0 )
+				strongConnect( node );
+
+		// An edge outside the matching survives if it lies on a cycle or
+		// on an alternating path that ends in a free value
+		for ( int x = 0; x < k; ++x )
+		{
+			Domain d = vars[x].getDomain();
+			for ( int a = d.first(); a != 0; a = d.next( a ) )
+			{
+				int node = k + a - 1;
+				if ( a == varMatch[x] || component[x] == component[node] || reachesFree[node] )
+					continue;
+
+				if ( ! removeValue( x, a, changed ) )
+					return false;
+			}
+		}
+
+		return true;
+	}
+
+	// =================================================================
+	// Matching
+	// =================================================================
+
+	private boolean findMaximumMatching ( )
+	{
+		for ( int a = 0; a < m; ++a )
+			valMatch[a] = -1;
+
+		// Greedy start, then augmenting paths for the rest
+		for ( int x = 0; x < k; ++x )
+		{
+			varMatch[x] = 0;
+			Domain d = vars[x].getDomain();
+			for ( int a = d.first(); a != 0; a = d.next( a ) )
+			{
+				if ( valMatch[a - 1] < 0 )
+				{
+					valMatch[a - 1] = x;
+					varMatch[x] = a;
+					break;
+				}
+			}
+		}
+
+		for ( int x = 0; x < k; ++x )
+		{
+			if ( varMatch[x] != 0 )
+				continue;
+
+			seenStamp++;
+			if ( ! augment( x ) )
+				return false;
+		}
+
+		return true;
+	}
+
+	private boolean augment ( int x )
+	{
+		Domain d = vars[x].getDomain();
+		for ( int a = d.first(); a != 0; a = d.next( a ) )
+		{
+			if ( valSeen[a - 1] == seenStamp )
+				continue;
+
+			valSeen[a - 1] = seenStamp;
+			if ( valMatch[a - 1] < 0 || augment( valMatch[a - 1] ) )
+			{
+				valMatch[a - 1] = x;
+				varMatch[x] = a;
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Tarjan's algorithm. Edges go from a variable to its unmatched values
+	 * and from a matched value back to its variable.
+	 */
+	private void strongConnect ( int node )
+	{
+		index[node] = low[node] = counter++;
+		stack[stackSize++] = node;
+		onStack[node] = true;
+
+		if ( node < k )
+		{
+			Domain d = vars[node].getDomain();
+			for ( int a = d.first(); a != 0; a = d.next( a ) )
+				if ( a != varMatch[node] )
+					visit( node, k + a - 1 );
+		}
+		else if ( valMatch[node - k] >= 0 )
+		{
+			visit( node, valMatch[node - k] );
+		}
+
+		if ( low[node] == index[node] )
+		{
+			int w;
+			do
+			{
+				w = stack[--stackSize];
+				onStack[w] = false;
+				component[w] = componentCount;
+			}
+			while ( w != node );
+			componentCount++;
+		}
+	}
+
+	private void visit ( int node, int w )
+	{
+		if ( index[w] < 0 )
+		{
+			strongConnect( w );
+			low[node] = Math.min( low[node], low[w] );
+		}
+		else if ( onStack[w] )
+		{
+			low[node] = Math.min( low[node], index[w] );
+		}
+	}
+
+	// =================================================================
+	// Helpers
+	// =================================================================
+
+	// Removes value from the variable at position x, false on a wipeout
+	private boolean removeValue ( int x, int value, List<Variable> changed )
+	{
+		Variable v = vars[x];
+		if ( ! v.getDomain().contains( value ) )
+			return true;
+
+		if ( v.size() == 1 || ! v.isChangeable() )
+			return false;
+
+		if ( ! pushed[x] )
+		{
+			pushed[x] = true;
+			trail.push( v );
+			changed.add( v );
+		}
+
+		v.removeValueFromDomain( value );
+
+		if ( listener != null )
+			listener.valuesPruned( propagator, 1 );
+		return true;
+	}
+
+	// Copies the constraint into the scratch arrays, growing them if needed
+	private void load ( Constraint c )
+	{
+		k = c.size();
+		m = 0;
+
+		if ( vars.length < k )
+		{
+			vars = new Variable[k];
+			pushed = new boolean[k];
+			varMatch = new int[k];
+		}
+
+		for ( int x = 0; x < k; ++x )
+		{
+			vars[x] = c.vars.get( x );
+			pushed[x] = false;
+
+			int last = 0;
+			Domain d = vars[x].getDomain();
+			for ( int a = d.first(); a != 0; a = d.next( a ) )
+				last = a;
+
+			m = Math.max( m, last );
+		}
+
+		if ( valCount.length < m )
+		{
+			valCount = new int[m];
+			valHolder = new int[m];
+			valMatch = new int[m];
+			valSeen = new int[m];
+			seenStamp = 0;
+		}
+
+		if ( index.length < k + m )
+		{
+			index = new int[k + m];
+			low = new int[k + m];
+			component = new int[k + m];
+			stack = new int[k + m];
+			onStack = new boolean[k + m];
+			reachesFree = new boolean[k + m];
+		}
+	}
+}
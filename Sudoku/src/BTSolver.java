@@ -1,10 +1,13 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.HashSet;
 
 public class BTSolver
@@ -20,6 +23,69 @@ public class BTSolver
 
 	private boolean hasSolution = false;
 
+	// Solutions of earlier puzzles, and the answer it gave, if any
+	private SolutionCache cache;
+	private SudokuBoard cachedSolution;
+
+	// Counters of the current solve
+	private long nodes;
+	private int maxDepth;
+	private long propagations;
+	private SolveStats stats;
+
+	// Restarts, undoLimit is the trail undo count that ends the current run
+	private int restartBase = 0;
+	private long restarts;
+	private long undoLimit = Long.MAX_VALUE;
+	private Random random;
+
+	// Assigned variables whose value has not been forward checked yet
+	private ArrayDeque<Variable> assignedQueue = new ArrayDeque<Variable>();
+	private boolean seedAllAssigned = true;
+
+	// Arc consistency worklist, arcs of variable i are arcOffset[i] .. arcOffset[i+1]-1
+	private int[] arcOffset, arcFrom, arcTo, arcReverse;
+	private int[] arcQueue;
+	private boolean[] arcQueued;
+	private int arcQueueHead, arcQueueSize;
+
+	// All-different propagation, constraints waiting are kept by id
+	private AllDifferent allDifferent;
+	private boolean[] constraintDirty;
+	private int[] dirtyConstraints;
+	private int dirtyCount;
+	private List<Variable> changedVariables = new ArrayList<Variable>();
+
+	// Keeps the unassigned variables ordered for MRV selection
+	private VariableHeap variableHeap;
+
+	// Search stack: per depth the branching variable, its values and
+	// the index of the next value to try
+	private Variable[] branchVariables = new Variable[0];
+	private int[][] valueBuffers = new int[0][];
+	private int[] valueCursor = new int[0];
+	private int[] valueCount = new int[0];
+
+	// LCV scratch: conflict count per value, when the network has a store
+	private int[] conflictCounts = new int[0];
+
+	// Steps of the search loop
+	private static final int ENTER      = 0;
+	private static final int NEXT_VALUE = 1;
+	private static final int BACKTRACK  = 2;
+	private static final int RETURN     = 3;
+	private boolean rootChecked = false;
+	private boolean rootConsistent;
+	private AtomicBoolean stopFlag;
+	private SolverListener listener;
+
+	// Budget of the current solve, expired once any limit was reached
+	private AtomicBoolean cancelToken;
+	private long nodeLimit = Long.MAX_VALUE;
+	private long deadline;
+	private boolean hasDeadline;
+	private boolean expired;
+
 	public String varHeuristics;
 	public String valHeuristics;
 	public String cChecks;
@@ -30,7 +96,13 @@ public class BTSolver
 
 	public BTSolver ( SudokuBoard sboard, Trail trail, String val_sh, String var_sh, String cc )
 	{
-		this.network    = new ConstraintNetwork( sboard );
+		this( new ConstraintNetwork( sboard ), sboard, trail, val_sh, var_sh, cc );
+	}
+
+	// Solves an existing network, sboard gives the board dimensions
+	public BTSolver ( ConstraintNetwork network, SudokuBoard sboard, Trail trail, String val_sh, String var_sh, String cc )
+	{
+		this.network    = network;
 		this.sudokuGrid = sboard;
 		this.trail      = trail;
 
@@ -62,42 +134,65 @@ public class BTSolver
 	 * (1) If a variable is assigned then eliminate that value from
 	 *     the square's neighbors.
 	 *
+	 * Only the variables waiting in assignedQueue are processed: the one
+	 * solve() just assigned, plus any neighbor whose domain is reduced to
+	 * a single value along the way. The first call seeds the queue with
+	 * every variable that is already assigned.
+	 *
 	 * Note: remember to trail.push variables before you change their domain
 	 * Return: true is assignment is consistent, false otherwise
 	 */
 	private boolean forwardChecking ( )
 	{
-		//Go through each variable and assign a value and check for consistency
-		for (Variable v: network.getVariables())
+		if ( seedAllAssigned )
+		{
+			seedAllAssigned = false;
+			for ( Variable v : network.getVariables() )
+				if ( v.isAssigned() )
+					assignedQueue.add( v );
+		}
+
+		while ( ! assignedQueue.isEmpty() )
 		{
-			if (v.isAssigned())
-			{	
-				//check the neighbor of variable v and removes value from its from neighbor
-				for (Variable neighborVar: network.getNeighborsOfVariable(v))
+			Variable v = assignedQueue.poll();
+			int value = v.getAssignment();
+			markChanged( v );
+
+			//check the neighbor of variable v and removes value from its from neighbor
+			for ( Variable neighborVar : network.getNeighborsOfVariable( v ) )
+			{
+				//Check if variable v value is the same as its neighbor
+				if ( neighborVar.isAssigned() )
 				{
-					//Check if variable v value is the same as its neighbor 
-					if (neighborVar.getAssignment() == v.getAssignment())
+					if ( neighborVar.getAssignment() == value )
+					{
+						assignedQueue.clear();
 						return false;
-					else if (!neighborVar.isAssigned())
-					{	
-						for (Integer domainVal: neighborVar.getValues())
-						{	
-							//Push variable to the stack if variable contains the domain
-							if (v.getAssignment() == domainVal)
-							{
-								trail.push(neighborVar);
-								break;
-							}
-						}
 					}
-					else
-						continue;
-					//Eliminate variable from its neighbor
-					neighborVar.removeValueFromDomain(v.getAssignment());
-					//if neighbor variable has no value after remove, then it is not consistent
-					if (neighborVar.getDomain().size() == 0)
-						return false;
+					continue;
+				}
+
+				if ( ! neighborVar.getDomain().contains( value ) )
+					continue;
+
+				//Push variable to the stack, then eliminate the value from it
+				trail.push( neighborVar );
+				neighborVar.removeValueFromDomain( value );
+				markChanged( neighborVar );
+
+				if ( listener != null )
+					listener.valuesPruned( SolverListener.FORWARD_CHECKING, 1 );
+
+				//if neighbor variable has no value after remove, then it is not consistent
+				if ( neighborVar.getDomain().isEmpty() )
+				{
+					assignedQueue.clear();
+					return false;
 				}
+
+				//A neighbor left with a single value is propagated in turn
+				if ( neighborVar.isAssigned() )
+					assignedQueue.add( neighborVar );
 			}
 		}
 		return true;
@@ -168,9 +263,14 @@ public class BTSolver
 				}
 				
 				// if only one value from v's domain is found to not match any value from the master set, assign v and forward check for consistency
-				if(count == 1)
+				if(count == 1 && !v.isAssigned())
 				{
+					if ( listener != null )
+						listener.valuesPruned( SolverListener.NORVIG_SINGLES, v.size() - 1 );
+
+					trail.push(v);
 					v.assignValue(uniqueValue);
+					assignedQueue.add(v);
 					if(forwardChecking() == false)
 						return false;
 				}
@@ -182,6 +282,231 @@ public class BTSolver
 		return true;
 	}
 
+	/**
+	 * AC-3 over the binary not-equal arcs of every constraint.
+	 *
+	 * An arc (xi, xj) is revised by removing from xi every value without
+	 * a support in xj. For a not-equal arc the only such value is the
+	 * last value left in xj, and a support stays valid as long as xj
+	 * keeps two values (the AC-2001 observation). So arcs into xi are
+	 * only queued again once xi is down to a single value.
+	 *
+	 * The first call queues every arc, later calls only the arcs into
+	 * the variables that solve() assigned since.
+	 *
+	 * Note: every domain change is pushed on the trail first
+	 * Return: true is assignment is consistent, false otherwise
+	 */
+	private boolean arcConsistency ( )
+	{
+		if ( arcTo == null )
+			buildArcs();
+
+		if ( seedAllAssigned )
+		{
+			seedAllAssigned = false;
+			for ( int arc = 0; arc < arcTo.length; ++arc )
+				queueArc( arc );
+		}
+
+		while ( ! assignedQueue.isEmpty() )
+			queueArcsInto( assignedQueue.poll().getId(), -1 );
+
+		List<Variable> variables = network.getVariables();
+
+		while ( arcQueueSize > 0 )
+		{
+			int arc = arcQueue[arcQueueHead];
+			arcQueueHead = ( arcQueueHead + 1 ) % arcQueue.length;
+			arcQueueSize--;
+			arcQueued[arc] = false;
+
+			Variable xi = variables.get( arcFrom[arc] );
+			Variable xj = variables.get( arcTo[arc] );
+
+			// Revise xi against xj
+			if ( xj.size() != 1 )
+				continue;
+
+			int value = xj.getAssignment();
+			if ( ! xi.getDomain().contains( value ) )
+				continue;
+
+			// xi would be wiped out
+			if ( xi.size() == 1 || ! xi.isChangeable() )
+			{
+				clearArcQueue();
+				return false;
+			}
+
+			trail.push( xi );
+			xi.removeValueFromDomain( value );
+
+			if ( listener != null )
+				listener.valuesPruned( SolverListener.ARC_CONSISTENCY, 1 );
+
+			if ( xi.getDomain().isEmpty() )
+			{
+				clearArcQueue();
+				return false;
+			}
+
+			if ( xi.size() == 1 )
+				queueArcsInto( xi.getId(), xj.getId() );
+		}
+
+		return true;
+	}
+
+	// Numbers the arcs (i, j) for every pair of neighbors i and j
+	private void buildArcs ( )
+	{
+		List<Variable> variables = network.getVariables();
+
+		int arcCount = 0;
+		for ( Variable v : variables )
+			arcCount += network.getNeighborsOfVariable( v ).size();
+
+		arcOffset   = new int[variables.size() + 1];
+		arcFrom     = new int[arcCount];
+		arcTo       = new int[arcCount];
+		arcReverse  = new int[arcCount];
+		arcQueue    = new int[arcCount];
+		arcQueued   = new boolean[arcCount];
+
+		int arc = 0;
+		for ( Variable v : variables )
+		{
+			arcOffset[v.getId()] = arc;
+			for ( Variable neighbor : network.getNeighborsOfVariable( v ) )
+			{
+				arcFrom[arc] = v.getId();
+				arcTo[arc]   = neighbor.getId();
+				arc++;
+			}
+		}
+		arcOffset[variables.size()] = arc;
+
+		for ( arc = 0; arc < arcCount; ++arc )
+		{
+			int j = arcTo[arc];
+			for ( int back = arcOffset[j]; back < arcOffset[j + 1]; ++back )
+			{
+				if ( arcTo[back] == arcFrom[arc] )
+				{
+					arcReverse[arc] = back;
+					break;
+				}
+			}
+		}
+	}
+
+	// Queues the arcs (k, i) for every neighbor k of i other than skip
+	private void queueArcsInto ( int i, int skip )
+	{
+		for ( int arc = arcOffset[i]; arc < arcOffset[i + 1]; ++arc )
+			if ( arcTo[arc] != skip )
+				queueArc( arcReverse[arc] );
+	}
+
+	private void queueArc ( int arc )
+	{
+		if ( arcQueued[arc] )
+			return;
+
+		arcQueued[arc] = true;
+		arcQueue[( arcQueueHead + arcQueueSize ) % arcQueue.length] = arc;
+		arcQueueSize++;
+	}
+
+	private void clearArcQueue ( )
+	{
+		for ( ; arcQueueSize > 0; --arcQueueSize )
+		{
+			arcQueued[arcQueue[arcQueueHead]] = false;
+			arcQueueHead = ( arcQueueHead + 1 ) % arcQueue.length;
+		}
+		assignedQueue.clear();
+	}
+
+	/**
+	 * Forward checking combined with the all-different propagator on
+	 * every row, column and block constraint.
+	 *
+	 * A constraint is propagated again whenever one of its variables
+	 * changed, until nothing changes anymore. After a backtrack the network
+	 * is back at such a fixpoint, so only the constraints touched during
+	 * this call need to be looked at.
+	 *
+	 * Return: true is assignment is consistent, false otherwise
+	 */
+	private boolean allDifferentCheck ( boolean useMatching )
+	{
+		if ( allDifferent == null )
+		{
+			allDifferent = new AllDifferent( trail, useMatching );
+			allDifferent.setSolverListener( listener );
+			constraintDirty = new boolean[network.getConstraints().size()];
+			dirtyConstraints = new int[constraintDirty.length];
+			for ( Constraint c : network.getConstraints() )
+				markDirty( c );
+		}
+
+		if ( ! forwardChecking() )
+			return clearDirtyConstraints();
+
+		List<Constraint> constraints = network.getConstraints();
+		while ( dirtyCount > 0 )
+		{
+			int id = dirtyConstraints[--dirtyCount];
+			constraintDirty[id] = false;
+
+			changedVariables.clear();
+			if ( ! allDifferent.propagate( constraints.get( id ), changedVariables ) )
+				return clearDirtyConstraints();
+
+			for ( Variable v : changedVariables )
+			{
+				markChanged( v );
+				if ( v.isAssigned() )
+					assignedQueue.add( v );
+			}
+
+			if ( ! forwardChecking() )
+				return clearDirtyConstraints();
+		}
+
+		return true;
+	}
+
+	// Marks the constraints of v for the all-different propagator
+	private void markChanged ( Variable v )
+	{
+		if ( constraintDirty == null )
+			return;
+
+		for ( Constraint c : network.getConstraintsContainingVariable( v ) )
+			markDirty( c );
+	}
+
+	private void markDirty ( Constraint c )
+	{
+		if ( ! constraintDirty[c.getId()] )
+		{
+			constraintDirty[c.getId()] = true;
+			dirtyConstraints[dirtyCount++] = c.getId();
+		}
+	}
+
+	private boolean clearDirtyConstraints ( )
+	{
+		while ( dirtyCount > 0 )
+			constraintDirty[dirtyConstraints[--dirtyCount]] = false;
+
+		assignedQueue.clear();
+		return false;
+	}
+
 	/**
 	 * Optional TODO: Implement your own advanced Constraint Propagation
 	 *
@@ -215,52 +540,7 @@ public class BTSolver
 	 */
 	private Variable getMRV ( )
 	{
-		Variable unassignedVar = null;
-		int mrv = 9999;
-		int neighborCount = 0;
-		List<Integer> neighborDomain = new LinkedList<Integer>();
-		//Go through each variable and find the min variable size
-		//Select the smallest domain size
-		for(Variable v : network.getVariables())
-		{	
-			if (!v.isAssigned())
-			{
-				//Go through the neighbors of the unassigned variable
-				for (Variable neighborVar : network.getNeighborsOfVariable(v))
-				{	
-					if (neighborVar.isAssigned())
-					{
-						if (neighborDomain.isEmpty())
-							neighborDomain.add(neighborVar.getAssignment());
-						else
-						{
-							//Prevent adding duplicate domain values 
-							boolean isDuplicate = false;
-							for (Integer value: neighborDomain)
-							{
-								if (value == neighborVar.getAssignment())
-								{
-									isDuplicate = true;
-									break;
-								}
-							}
-							if (!isDuplicate)
-								neighborDomain.add(neighborVar.getAssignment());
-						}
-					}
-				}
-				neighborCount = v.getDomain().size() - neighborDomain.size();
-				//Pick the variable with the smallest domain
-				if (neighborCount < mrv)
-				{
-					unassignedVar = v;
-					mrv = neighborCount;
-				}
-				neighborCount = 0;
-				neighborDomain.clear();
-			}
-		}
-		return unassignedVar;
+		return getVariableHeap( false ).peek();
 	}
 
 	/**
@@ -322,104 +602,16 @@ public class BTSolver
 	 */
 	private Variable MRVwithTieBreaker ( )
 	{
-		Variable unassignedVar = null;
-		List<Variable> mrvList = new LinkedList<Variable>();
-		int mrv = 9999;
-		int neighborCount = 0;
-		List<Integer> neighborDomain = new LinkedList<Integer>();
-		//Go through each variable and find the min variable size
-		//Select the smallest domain size
-		for(Variable v : network.getVariables())
-		{	
-			if (!v.isAssigned())
-			{
-				//Go through the neighbors of the unassigned variable
-				for (Variable neighborVar : network.getNeighborsOfVariable(v))
-				{	
-					if (neighborVar.isAssigned())
-					{
-						if (neighborDomain.isEmpty())
-							neighborDomain.add(neighborVar.getAssignment());
-						else
-						{
-							//Prevent adding duplicate domain values 
-							boolean isDuplicate = false;
-							for (Integer value: neighborDomain)
-							{
-								if (value == neighborVar.getAssignment())
-								{
-									isDuplicate = true;
-									break;
-								}
-							}
-							if (!isDuplicate)
-								neighborDomain.add(neighborVar.getAssignment());
-						}
-					}
-				}
-				neighborCount = v.getDomain().size() - neighborDomain.size();
-				//Pick the variable with the smallest domain
-				if (neighborCount < mrv)
-				{
-					if (!mrvList.isEmpty())
-						mrvList.clear();
-					mrvList.add(v);
-					mrv = neighborCount;
-				}
-				//if the variable domain size are equal to mrv then add to mrv variable list
-				else if (neighborCount == mrv)
-					mrvList.add(v);
-				//Reset variables
-				neighborCount = 0;
-				neighborDomain.clear();
-			}
-		}
-		//Do degree checking here as a tie breaker
-		if (mrvList.size() > 1)
-		{	
-			int unassignCount = -1;
-			//Go through all the variable in the board
-			for (Variable v: mrvList)
-			{
-				//if the variable is unassigned
-				if (!v.isAssigned())
-				{
-					//create a List of unassigned variable
-					List<Variable> unassignList = new LinkedList<Variable>();
-					//get a list of the constraint variables of the unassigned variable 
-					List<Constraint> constraintList = network.getConstraintsContainingVariable(v);
-					for (Constraint c: constraintList)
-					{
-						List<Variable> cVar = c.vars;
-						for (Variable v2: cVar)
-						{
-							//if the variable is not the one looking at
-							if (!v2.getName().equals(v.getName()))
-							{
-								//if not assigned add to list
-								if (!v2.isAssigned())
-								{
-									if (unassignList.isEmpty())
-										unassignList.add(v2);
-									else if (!unassignList.contains(v2))
-										unassignList.add(v2);
-								}
-							}
-						}
-					}
-					//select the unassigned variable if the degree is higher
-					if (unassignList.size() > unassignCount)
-					{
-						unassignedVar = v;
-						unassignCount = unassignList.size();
-					}
-				}
-			}
-			
-		}
-		else if (mrvList.size() == 1)
-			unassignedVar = mrvList.get(0);
-		return unassignedVar;
+		return getVariableHeap( true ).peek();
+	}
+
+	// The heap is built on first use, after the initial propagation
+	private VariableHeap getVariableHeap ( boolean useDegree )
+	{
+		if ( variableHeap == null )
+			variableHeap = new VariableHeap( network, useDegree );
+
+		return variableHeap;
 	}
 
 	/**
@@ -464,47 +656,88 @@ public class BTSolver
 	 */
 	public List<Integer> getValuesLCVOrder ( Variable v )
 	{
-		List<Integer> sortedLCV = new LinkedList<Integer>();
-		Map<Integer,Integer> domainMap = new HashMap<Integer,Integer>();
-		//Traverse every domain in variable
-		for (Integer val: v.getDomain())
+		int[] values = new int[v.size()];
+		int count = fillValuesLCVOrder( v, values );
+
+		List<Integer> sortedLCV = new ArrayList<Integer>( count );
+		for ( int i = 0; i < count; ++i )
+			sortedLCV.add( values[i] );
+
+		return sortedLCV;
+	}
+
+	/**
+	 * Writes v's domain in LCV order into out and returns how many values
+	 * were written. Ties keep ascending value order.
+	 *
+	 * Each value is packed with its conflict count (the number of neighbors
+	 * whose domain contains it) as (count << 16 | value), so a primitive
+	 * sort orders them without allocating.
+	 */
+	private int fillValuesLCVOrder ( Variable v, int[] out )
+	{
+		Domain domain = v.getDomain();
+		VariableStore store = network.getStore();
+		int count = 0;
+
+		if ( store != null )
+			countConflicts( v, store );
+
+		for ( int val = domain.first(); val != 0; val = domain.next( val ) )
+		{
+			int conflicts = 0;
+			if ( store != null )
+			{
+				conflicts = conflictCounts[val];
+			}
+			else
+			{
+				List<Variable> neighbors = network.getNeighborsOfVariable( v );
+				for ( int i = 0; i < neighbors.size(); ++i )
+					if ( neighbors.get( i ).getDomain().contains( val ) )
+						conflicts++;
+			}
+
+			out[count++] = ( conflicts << 16 ) | val;
+		}
+
+		Arrays.sort( out, 0, count );
+
+		for ( int i = 0; i < count; ++i )
+			out[i] &= 0xFFFF;
+
+		return count;
+	}
+
+	/**
+	 * Fills conflictCounts[val] for every value of v by scanning the domain
+	 * words of its neighbors in the store, one word at a time, instead of
+	 * testing each value against each neighbor.
+	 */
+	private void countConflicts ( Variable v, VariableStore store )
+	{
+		Domain domain = v.getDomain();
+		int words = Math.min( domain.wordCount(), store.wordsPerCell() );
+
+		if ( conflictCounts.length < words * 64 + 1 )
+			conflictCounts = new int[words * 64 + 1];
+
+		for ( int val = domain.first(); val != 0; val = domain.next( val ) )
+			conflictCounts[val] = 0;
+
+		int[] neighbors = network.getNeighborIds( v );
+		for ( int i = 0; i < neighbors.length; ++i )
 		{
-			int count = 0;
-			//Check its neighbor
-			for (Variable neighborVar: network.getNeighborsOfVariable(v))
+			for ( int w = 0; w < words; ++w )
 			{
-				if (!neighborVar.isAssigned())
+				long common = store.getWord( neighbors[i], w ) & domain.getWord( w );
+				while ( common != 0 )
 				{
-					for (Integer v2: neighborVar.getDomain())
-					{
-						if (v2 == val)
-							count++;
-					}
-					
+					conflictCounts[w * 64 + Long.numberOfTrailingZeros( common ) + 1]++;
+					common &= common - 1;
 				}
-				else if (neighborVar.getValues().get(0) == val)
-					count++;
 			}
-			domainMap.put(val, count);
-		}
-		//Convert Map to List of Map
-		List<Map.Entry<Integer, Integer>> list =
-			new LinkedList<Map.Entry<Integer, Integer>>(domainMap.entrySet());
-		
-		//Sort list with Collections.sort(), provide a custom Comparator
-		//Try switch the i1 i2 position in ascending order
-		Collections.sort(list, new Comparator<Map.Entry<Integer, Integer>>() {
-		    public int compare(Map.Entry<Integer, Integer> i1,
-				       Map.Entry<Integer, Integer> i2) {
-			return (i1.getValue()).compareTo(i2.getValue());
-		    }
-		});
-
-		//Loop the sorted list and put it into a new insertion order Map LinkedHashMap
-		for (Map.Entry<Integer, Integer> entry : list) {
-		    sortedLCV.add(entry.getKey());
 		}
-		return sortedLCV;
 	}
 
 	/**
@@ -522,14 +755,223 @@ public class BTSolver
 	// Engine Functions
 	//==================================================================
 
-	public void solve ( )
+	// Runs the search without limits and returns the counters of this run
+	public SolveStats solve ( )
+	{
+		solve( new SolveBudget() );
+		return stats;
+	}
+
+	/**
+	 * Runs the search within budget. The counters of the run are
+	 * available from getStats() afterwards.
+	 *
+	 * Return: SOLVED, UNSAT, or TIMEOUT if the budget ran out (or the
+	 *         stop flag was set) before the search could tell
+	 */
+	public SolveResult solve ( SolveBudget budget )
+	{
+		long startPushes = trail.getPushCount();
+		long startUndos  = trail.getUndoCount();
+		long startTime   = System.nanoTime();
+		nodes = propagations = restarts = 0;
+		maxDepth = 0;
+
+		cancelToken = budget.getCancelToken();
+		nodeLimit   = budget.getNodeLimit();
+		hasDeadline = budget.getTimeout() > 0;
+		deadline    = startTime + budget.getTimeout() * 1000000L;
+		expired     = false;
+
+		// A solution from the cache only answers the solve that found it
+		if ( cachedSolution != null )
+		{
+			cachedSolution = null;
+			hasSolution = false;
+		}
+
+		SolutionCache.Lookup lookup = null;
+		if ( cache != null )
+		{
+			lookup = cache.lookup( sudokuGrid );
+			cachedSolution = lookup.getSolution();
+			if ( cachedSolution != null )
+			{
+				long elapsed = System.nanoTime() - startTime;
+				if ( listener != null )
+					listener.solvedFromCache( elapsed );
+
+				hasSolution = true;
+				stats = new SolveStats( 0, 0, 0, 0, 0, 0, elapsed, SolveResult.SOLVED );
+				return SolveResult.SOLVED;
+			}
+		}
+
+		if ( restartBase > 0 )
+			solveWithRestarts();
+		else
+			search();
+
+		if ( lookup != null && hasSolution )
+			lookup.put( getSolution() );
+
+		stats = new SolveStats( trail.getPushCount() - startPushes,
+		                        trail.getUndoCount() - startUndos,
+		                        nodes, maxDepth, propagations, restarts,
+		                        System.nanoTime() - startTime, getResult() );
+		return getResult();
+	}
+
+	// Outcome of the last solve
+	public SolveResult getResult ( )
 	{
 		if ( hasSolution )
-			return;
+			return SolveResult.SOLVED;
+
+		return expired ? SolveResult.TIMEOUT : SolveResult.UNSAT;
+	}
+
+	/**
+	 * Enables restarts. Run i of the search may backtrack base * luby(i)
+	 * times before it is abandoned and the search starts over from the
+	 * root, with the ties of the MRV heuristics broken in a new random
+	 * order. The Luby sequence (1,1,2,1,1,2,4,1,...) keeps growing, so
+	 * the search stays complete. A base of 0 disables restarts.
+	 */
+	public void setRestarts ( int base, long seed )
+	{
+		restartBase = base;
+		random = new Random( seed );
+	}
+
+	private void solveWithRestarts ( )
+	{
+		for ( int run = 1; ; ++run )
+		{
+			undoLimit = trail.getUndoCount() + restartBase * luby( run );
+			search();
+
+			boolean cutoff = trail.getUndoCount() >= undoLimit;
+			undoLimit = Long.MAX_VALUE;
+
+			if ( hasSolution || ! cutoff || isStopped() )
+				return;
+
+			restarts++;
+			if ( variableHeap != null )
+				variableHeap.shuffleRanks( random );
+		}
+	}
+
+	// The i-th element (from 1) of the Luby sequence
+	private static long luby ( int i )
+	{
+		while ( true )
+		{
+			int k = 1;
+			while ( ( 1L << k ) - 1 < i )
+				k++;
+
+			if ( ( 1L << k ) - 1 == i )
+				return 1L << ( k - 1 );
+
+			i -= ( 1 << ( k - 1 ) ) - 1;
+		}
+	}
+
+	/**
+	 * Depth first search over an explicit stack. It visits the same
+	 * nodes in the same order as a recursive backtracking search: every
+	 * depth keeps its branching variable, its values and a cursor to the
+	 * next value to try. Each depth owns one trail marker, placed when a
+	 * value is assigned and undone before the next one is tried.
+	 */
+	private void search ( )
+	{
+		int depth = 0;
+		int step  = ENTER;
+
+		while ( true )
+		{
+			switch ( step )
+			{
+				case ENTER:
+					step = enterNode( depth ) ? NEXT_VALUE : RETURN;
+					break;
+
+				case NEXT_VALUE:
+					if ( valueCursor[depth] == valueCount[depth] )
+					{
+						step = RETURN;
+						break;
+					}
+
+					Variable v = branchVariables[depth];
+					int value = valueBuffers[depth][valueCursor[depth]++];
+
+					// Assign, propagate constraints, check consistency, go deeper
+					if ( tryAssignment( v, value ) )
+					{
+						depth++;
+						step = ENTER;
+					}
+					else
+						step = BACKTRACK;
+					break;
+
+				case BACKTRACK:
+					// If this assignment succeeded, return
+					if ( hasSolution )
+					{
+						step = RETURN;
+						break;
+					}
+
+					// Otherwise backtrack
+					trail.undo();
+					step = isStopped() ? RETURN : NEXT_VALUE;
+					break;
+
+				case RETURN:
+					if ( depth == 0 )
+						return;
+
+					depth--;
+					step = BACKTRACK;
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Expands the node at depth: picks its variable and values.
+	 *
+	 * Return: false if there is nothing to try here, because the search
+	 *         is over, was stopped, or the root is inconsistent
+	 */
+	private boolean enterNode ( int depth )
+	{
+		if ( hasSolution || isStopped() )
+			return false;
+
+		nodes++;
+		if ( depth > maxDepth )
+			maxDepth = depth;
+
+		if ( listener != null )
+			listener.nodeVisited( depth );
+
+		// Propagate the initial assignments once, below every trail marker
+		if ( ! propagateRoot() )
+			return false;
 
 		// Variable Selection
+		long start = listener != null ? System.nanoTime() : 0;
 		Variable v = selectNextVariable();
 
+		if ( listener != null )
+			listener.variableSelected( System.nanoTime() - start );
+
 		if ( v == null )
 		{
 			for ( Variable var : network.getVariables() )
@@ -538,36 +980,154 @@ public class BTSolver
 				if ( ! var.isAssigned() )
 				{
 					System.out.println( "Error" );
-					return;
+					return false;
 				}
 			}
 
 			// Success
 			hasSolution = true;
-			return;
+			return false;
 		}
 
-		// Attempt to assign a value
-		for ( Integer i : getNextValues( v ) )
+		if ( depth >= branchVariables.length )
 		{
-			// Store place in trail and push variable's state on trail
-			trail.placeTrailMarker();
-			trail.push( v );
+			int capacity = Math.max( depth + 1, 2 * branchVariables.length );
+			branchVariables = Arrays.copyOf( branchVariables, capacity );
+			valueCursor     = Arrays.copyOf( valueCursor, capacity );
+			valueCount      = Arrays.copyOf( valueCount, capacity );
+		}
 
-			// Assign the value
-			v.assignValue( i );
+		branchVariables[depth] = v;
+		valueCursor[depth]     = 0;
+		start = listener != null ? System.nanoTime() : 0;
+		valueCount[depth]      = fillNextValues( v, getValueBuffer( depth, v.size() ) );
 
-			// Propagate constraints, check consistency, recurse
-			if ( checkConsistency() )
-				solve();
+		if ( listener != null )
+			listener.valuesOrdered( System.nanoTime() - start );
+		return true;
+	}
 
-			// If this assignment succeeded, return
-			if ( hasSolution )
-				return;
+	/**
+	 * One branching step: places a trail marker, assigns value to v and
+	 * runs the consistency check. undoAssignment() takes it back, whether
+	 * the check succeeded or not.
+	 *
+	 * Return: true if the network is still consistent
+	 */
+	public boolean tryAssignment ( Variable v, int value )
+	{
+		// Store place in trail and push variable's state on trail
+		trail.placeTrailMarker();
+		trail.push( v );
+
+		v.assignValue( value );
+		assignedQueue.clear();
+		assignedQueue.add( v );
+
+		return propagate();
+	}
+
+	public void undoAssignment ( )
+	{
+		trail.undo();
+	}
+
+	// True once the budget ran out or the restart cutoff is reached
+	private boolean isStopped ( )
+	{
+		return isExpired() || trail.getUndoCount() >= undoLimit;
+	}
+
+	// True once the stop flag or cancel token is set, or the node limit
+	// or deadline of the budget is reached
+	private boolean isExpired ( )
+	{
+		if ( ! expired )
+		{
+			expired = ( stopFlag != null && stopFlag.get() )
+			       || ( cancelToken != null && cancelToken.get() )
+			       || nodes >= nodeLimit
+			       || ( hasDeadline && System.nanoTime() - deadline >= 0 );
+		}
+
+		return expired;
+	}
 
-			// Otherwise backtrack
-			trail.undo();
+	/**
+	 * Runs the consistency check on the initial assignments. This only
+	 * happens once, later calls return the first result.
+	 *
+	 * Return: true if the network is consistent
+	 */
+	public boolean propagateRoot ( )
+	{
+		if ( ! rootChecked )
+		{
+			rootChecked = true;
+			rootConsistent = propagate();
 		}
+
+		return rootConsistent;
+	}
+
+	/**
+	 * Search node access for parallel solvers: the next variable to
+	 * branch on (null once everything is assigned) and its values in
+	 * the order they would be tried.
+	 */
+	public Variable getBranchVariable ( )
+	{
+		return selectNextVariable();
+	}
+
+	public int getBranchValues ( Variable v, int[] out )
+	{
+		return fillNextValues( v, out );
+	}
+
+	/**
+	 * Makes the search give up as soon as flag is set. The flag can be
+	 * shared between solvers to cancel all of them at once.
+	 */
+	public void setStopFlag ( AtomicBoolean flag )
+	{
+		this.stopFlag = flag;
+	}
+
+	/**
+	 * Answers solve() from cache when it holds a solution of a variant of
+	 * the puzzle, and adds the solutions found to it. Only for solvers of
+	 * a whole board, not of a subtree of its search.
+	 */
+	public void setSolutionCache ( SolutionCache cache )
+	{
+		this.cache = cache;
+	}
+
+	/**
+	 * Attaches a listener to the search and its propagators, or detaches
+	 * it with null. Without a listener nothing is timed.
+	 */
+	public void setSolverListener ( SolverListener listener )
+	{
+		this.listener = listener;
+
+		if ( allDifferent != null )
+			allDifferent.setSolverListener( listener );
+	}
+
+	// Runs the consistency check, timed while a listener is attached
+	private boolean propagate ( )
+	{
+		propagations++;
+
+		if ( listener == null )
+			return checkConsistency();
+
+		long start = System.nanoTime();
+		boolean consistent = checkConsistency();
+		listener.consistencyChecked( System.nanoTime() - start, consistent );
+		return consistent;
 	}
 
 	private boolean checkConsistency ( )
@@ -580,6 +1140,15 @@ public class BTSolver
 			case "norvigCheck":
 				return norvigCheck();
 
+			case "arcConsistency":
+				return arcConsistency();
+
+			case "allDifferent":
+				return allDifferentCheck( true );
+
+			case "hallSets":
+				return allDifferentCheck( false );
+
 			case "tournCC":
 				return getTournCC();
 
@@ -624,13 +1193,57 @@ public class BTSolver
 		}
 	}
 
+	// Same as getNextValues, written into out, returns the number of values
+	private int fillNextValues ( Variable v, int[] out )
+	{
+		int count = 0;
+
+		switch ( valHeuristics )
+		{
+			case "LeastConstrainingValue":
+				return fillValuesLCVOrder( v, out );
+
+			case "tournVal":
+				for ( Integer i : getTournVal( v ) )
+					out[count++] = i;
+				return count;
+
+			default:
+				Domain domain = v.getDomain();
+				for ( int val = domain.first(); val != 0; val = domain.next( val ) )
+					out[count++] = val;
+				return count;
+		}
+	}
+
+	// Returns the value buffer of a search depth, large enough for size values
+	private int[] getValueBuffer ( int depth, int size )
+	{
+		if ( depth >= valueBuffers.length )
+			valueBuffers = Arrays.copyOf( valueBuffers, Math.max( depth + 1, 2 * valueBuffers.length ) );
+
+		if ( valueBuffers[depth] == null || valueBuffers[depth].length < size )
+			valueBuffers[depth] = new int[size];
+
+		return valueBuffers[depth];
+	}
+
 	public boolean hasSolution ( )
 	{
 		return hasSolution;
 	}
 
+	// Returns the counters of the last solve, or null before the first one
+	public SolveStats getStats ( )
+	{
+		return stats;
+	}
+
 	public SudokuBoard getSolution ( )
 	{
+		if ( cachedSolution != null )
+			return new SudokuBoard( cachedSolution );
+
 		return network.toSudokuBoard ( sudokuGrid.getP(), sudokuGrid.getQ() );
 	}
 
@@ -0,0 +1,493 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reproducible performance runs over a board directory.
+ *
+ * Every heuristic combination solves every board, first a few warmup
+ * times and then a number of timed trials. Each board and combination
+ * gives one row with the p50/p95/p99 and max wall time of the trials and
+ * the nodes, trail pushes and backtracks of the search. A percentile is
+ * left empty when there are too few trials for it to differ from the max,
+ * p95 needs 20 trials and p99 100. The rows are written as CSV and/or
+ * JSON.
+ *
+ * A CSV file from an earlier run can be given as baseline. Combinations
+ * whose total p50 time grew by more than the tolerance, and boards that
+ * were solved in the baseline but not anymore, count as regressions.
+ */
+
+public class BenchRunner
+{
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	// The tokens of Main that are enumerated, per heuristic kind. A search
+	// without propagation only ends at the limit on most boards, so it is
+	// left out.
+	private static final String[] VAR_TOKENS = { "", "MRV", "DEG", "MAD" };
+	private static final String[] VAL_TOKENS = { "", "LCV" };
+	private static final String[] CC_TOKENS  = { "FC", "NOR", "AC3", "ALLDIFF", "HALL" };
+
+	private static final String CSV_HEADER =
+		"combination,board,status,trials,p50_ms,p95_ms,p99_ms,max_ms,nodes,pushes,backtracks";
+
+	private int warmup;
+	private int trials;
+	private long limitMillis;
+
+	private String csvFile;
+	private String jsonFile;
+	private String baselineFile;
+	private double tolerance = 0.10;
+
+	// One row of the results
+	static class Result
+	{
+		String combination;
+		String board;
+		String status;
+		int trials;
+		double p50, p95, p99, max;   // NaN when there are too few trials
+		long nodes, pushes, backtracks;
+	}
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	/**
+	 * warmup untimed and trials timed solves per board, each one stopped
+	 * after limitMillis. A board that runs into the limit is not solved
+	 * again by the same combination.
+	 */
+	public BenchRunner ( int warmup, int trials, long limitMillis )
+	{
+		this.warmup = warmup;
+		this.trials = Math.max( 1, trials );
+		this.limitMillis = limitMillis;
+	}
+
+	// =================================================================
+	// Modifiers
+	// =================================================================
+
+	// Files the results are written to, null for none
+	public void setOutput ( String csvFile, String jsonFile )
+	{
+		this.csvFile = csvFile;
+		this.jsonFile = jsonFile;
+	}
+
+	// CSV of an earlier run and the allowed slowdown, 0.10 for 10%
+	public void setBaseline ( String baselineFile, double tolerance )
+	{
+		this.baselineFile = baselineFile;
+		this.tolerance = tolerance;
+	}
+
+	// =================================================================
+	// Combinations
+	// =================================================================
+
+	/**
+	 * Returns every combination of Main's heuristic tokens. A heuristic
+	 * kind that is set by one of the fixed tokens is not enumerated.
+	 */
+	public static List<String> combinations ( List<String> fixed )
+	{
+		String[][] kinds = { VAL_TOKENS, VAR_TOKENS, CC_TOKENS };
+
+		// Each fixed token replaces the kinds it sets, TOURN sets all three
+		for ( String token : fixed )
+		{
+			String[] heuristics = { "", "", "" };
+			Main.applyHeuristicToken( token, heuristics );
+
+			for ( int k = 0; k < 3; ++k )
+				if ( ! heuristics[k].isEmpty() )
+					kinds[k] = new String[] { token };
+		}
+
+		List<String> result = new ArrayList<String>();
+		for ( String var : kinds[1] )
+			for ( String val : kinds[0] )
+				for ( String cc : kinds[2] )
+					result.add( join( var, val, cc ) );
+
+		return result;
+	}
+
+	// Joins the tokens with single spaces, skipping empty and repeated ones
+	private static String join ( String... tokens )
+	{
+		StringBuilder sb = new StringBuilder();
+		for ( int i = 0; i < tokens.length; ++i )
+		{
+			if ( tokens[i].isEmpty() || Arrays.asList( tokens ).subList( 0, i ).contains( tokens[i] ) )
+				continue;
+
+			if ( sb.length() > 0 )
+				sb.append( ' ' );
+			sb.append( tokens[i] );
+		}
+		return sb.length() == 0 ? "NONE" : sb.toString();
+	}
+
+	// =================================================================
+	// Engine Functions
+	// =================================================================
+
+	/**
+	 * Runs every combination over the boards, writes the results and
+	 * compares them to the baseline.
+	 *
+	 * Return: the number of regressions against the baseline
+	 */
+	public int run ( File[] boardFiles, List<String> combinations ) throws IOException
+	{
+		if ( csvFile == null && jsonFile == null )
+			csvFile = "bench.csv";
+
+		// Read the baseline first, the results must not overwrite it
+		List<Result> baseline = null;
+		if ( baselineFile != null )
+		{
+			checkNotBaseline( csvFile );
+			checkNotBaseline( jsonFile );
+			baseline = readCsv( baselineFile );
+		}
+
+		File[] files = boardFiles.clone();
+		Arrays.sort( files );
+
+		List<String> names = new ArrayList<String>();
+		List<SudokuBoard> boards = new ArrayList<SudokuBoard>();
+		for ( File f : files )
+		{
+			if ( ! f.isFile() )
+				continue;
+
+			try
+			{
+				boards.add( new SudokuBoard( f ) );
+				names.add( f.getName() );
+			}
+			catch ( IllegalArgumentException e )
+			{
+				System.out.println( "[ERROR] Skipping " + f + ": " + e.getMessage() );
+			}
+		}
+
+		List<Result> results = new ArrayList<Result>();
+		for ( String combination : combinations )
+		{
+			String[] heuristics = Benchmark.parseCombination( combination.equals( "NONE" ) ? "" : combination );
+			List<Result> rows = new ArrayList<Result>();
+
+			for ( int i = 0; i < boards.size(); ++i )
+				rows.add( runBoard( combination, heuristics, names.get( i ), boards.get( i ) ) );
+
+			printSummary( combination, rows );
+			results.addAll( rows );
+		}
+
+		if ( csvFile != null )
+			writeCsv( results, csvFile );
+
+		if ( jsonFile != null )
+			writeJson( results, jsonFile );
+
+		if ( baseline == null )
+			return 0;
+
+		return compare( baseline, results );
+	}
+
+	// Throws when output names the same file as the baseline
+	private void checkNotBaseline ( String output ) throws IOException
+	{
+		if ( output != null && new File( output ).getCanonicalFile().equals( new File( baselineFile ).getCanonicalFile() ) )
+			throw new IOException( "Output " + output + " would overwrite the baseline " + baselineFile
+			                       + ", set CSV= to another file" );
+	}
+
+	// Warmup and trials of one combination on one board
+	private Result runBoard ( String combination, String[] heuristics, String name, SudokuBoard board )
+	{
+		Result result = new Result();
+		result.combination = combination;
+		result.board = name;
+
+		double[] times = new double[trials];
+		int timed = 0;
+
+		for ( int run = 0; run < warmup + trials; ++run )
+		{
+			BTSolver solver = Main.createPlainSolver( board, new Trail(),
+			                                          heuristics[0], heuristics[1], heuristics[2] );
+			SolveResult outcome = solver.solve( new SolveBudget().setTimeout( limitMillis ) );
+			SolveStats stats = solver.getStats();
+
+			result.nodes = stats.getNodes();
+			result.pushes = stats.getPushes();
+			result.backtracks = stats.getUndos();
+			result.status = outcome == SolveResult.SOLVED ? "solved"
+			              : outcome == SolveResult.TIMEOUT ? "timeout" : "unsolvable";
+
+			if ( outcome == SolveResult.TIMEOUT )
+			{
+				times[0] = stats.getWallTimeNanos() / 1e6;
+				timed = 1;
+				break;
+			}
+
+			if ( run >= warmup )
+				times[timed++] = stats.getWallTimeNanos() / 1e6;
+		}
+
+		double[] sorted = Arrays.copyOf( times, timed );
+		Arrays.sort( sorted );
+
+		result.trials = timed;
+		result.p50 = percentile( sorted, 50 );
+		result.p95 = percentile( sorted, 95 );
+		result.p99 = percentile( sorted, 99 );
+		result.max = sorted[timed - 1];
+		return result;
+	}
+
+	/**
+	 * Nearest rank percentile of sorted values. NaN for a p above 50 when
+	 * there are fewer than 100 / (100 - p) values, as the rank would then
+	 * always be the max.
+	 */
+	static double percentile ( double[] sorted, int p )
+	{
+		if ( p > 50 && sorted.length * ( 100 - p ) < 100 )
+			return Double.NaN;
+
+		int rank = (int) Math.ceil( p / 100.0 * sorted.length );
+		return sorted[Math.max( 0, rank - 1 )];
+	}
+
+	private void printSummary ( String combination, List<Result> rows )
+	{
+		int solved = 0, timeouts = 0;
+		double total = 0;
+
+		for ( Result r : rows )
+		{
+			if ( r.status.equals( "solved" ) )
+				solved++;
+			else if ( r.status.equals( "timeout" ) )
+				timeouts++;
+
+			total += r.p50;
+		}
+
+		System.out.println( String.format( Locale.ROOT, "%-20s solved %4d  timeouts %4d  total p50 %10.1f ms",
+		                                   combination, solved, timeouts, total ) );
+	}
+
+	// =================================================================
+	// Baseline
+	// =================================================================
+
+	/**
+	 * Prints the differences to the baseline.
+	 *
+	 * Return: the number of combinations that got slower than the
+	 *         tolerance allows plus the number of boards no longer solved
+	 */
+	private int compare ( List<Result> baseline, List<Result> results )
+	{
+		Map<String, Result> base = new HashMap<String, Result>();
+		for ( Result r : baseline )
+			base.put( r.combination + "," + r.board, r );
+
+		// combination -> { baseline p50 total, current p50 total }
+		Map<String, double[]> totals = new LinkedHashMap<String, double[]>();
+		int regressions = 0;
+
+		for ( Result r : results )
+		{
+			Result b = base.get( r.combination + "," + r.board );
+			if ( b == null )
+				continue;
+
+			if ( b.status.equals( "solved" ) && ! r.status.equals( "solved" ) )
+			{
+				System.out.println( "REGRESSION " + r.combination + " " + r.board + ": " + r.status );
+				regressions++;
+				continue;
+			}
+
+			if ( b.nodes != r.nodes )
+				System.out.println( "Changed " + r.combination + " " + r.board + ": nodes " + b.nodes + " -> " + r.nodes );
+
+			if ( ! b.status.equals( "solved" ) || ! r.status.equals( "solved" ) )
+				continue;
+
+			double[] t = totals.get( r.combination );
+			if ( t == null )
+				totals.put( r.combination, t = new double[2] );
+
+			t[0] += b.p50;
+			t[1] += r.p50;
+		}
+
+		for ( Map.Entry<String, double[]> e : totals.entrySet() )
+		{
+			double[] t = e.getValue();
+			double change = t[0] > 0 ? ( t[1] - t[0] ) / t[0] : 0;
+			boolean slower = change > tolerance;
+
+			System.out.println( String.format( Locale.ROOT, "%-10s %-20s %10.1f ms -> %10.1f ms  %+6.1f%%",
+			                                   slower ? "SLOWER" : "ok", e.getKey(), t[0], t[1], 100 * change ) );
+			if ( slower )
+				regressions++;
+		}
+
+		return regressions;
+	}
+
+	// =================================================================
+	// Output
+	// =================================================================
+
+	private static void writeCsv ( List<Result> results, String file ) throws IOException
+	{
+		BufferedWriter out = new BufferedWriter( new FileWriter( file ) );
+		try
+		{
+			out.write( CSV_HEADER );
+			out.newLine();
+
+			for ( Result r : results )
+			{
+				out.write( String.format( Locale.ROOT, "%s,%s,%s,%d,%s,%s,%s,%s,%d,%d,%d",
+				                          r.combination, r.board, r.status, r.trials,
+				                          millis( r.p50, "" ), millis( r.p95, "" ), millis( r.p99, "" ),
+				                          millis( r.max, "" ), r.nodes, r.pushes, r.backtracks ) );
+				out.newLine();
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private static void writeJson ( List<Result> results, String file ) throws IOException
+	{
+		BufferedWriter out = new BufferedWriter( new FileWriter( file ) );
+		try
+		{
+			out.write( "[" );
+			String delim = "\n";
+
+			for ( Result r : results )
+			{
+				out.write( delim );
+				out.write( String.format( Locale.ROOT,
+					"  {\"combination\": \"%s\", \"board\": \"%s\", \"status\": \"%s\", \"trials\": %d, "
+					+ "\"p50_ms\": %s, \"p95_ms\": %s, \"p99_ms\": %s, \"max_ms\": %s, "
+					+ "\"nodes\": %d, \"pushes\": %d, \"backtracks\": %d}",
+					json( r.combination ), json( r.board ), r.status, r.trials,
+					millis( r.p50, "null" ), millis( r.p95, "null" ), millis( r.p99, "null" ),
+					millis( r.max, "null" ), r.nodes, r.pushes, r.backtracks ) );
+				delim = ",\n";
+			}
+
+			out.write( "\n]" );
+			out.newLine();
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	// Escapes quotes, backslashes and control characters for a JSON string
+	static String json ( String text )
+	{
+		StringBuilder sb = new StringBuilder( text.length() );
+		for ( int i = 0; i < text.length(); ++i )
+		{
+			char c = text.charAt( i );
+			if ( c == '"' || c == '\\' )
+				sb.append( '\\' ).append( c );
+			else if ( c < 0x20 )
+				sb.append( String.format( "\\u%04x", (int) c ) );
+			else
+				sb.append( c );
+		}
+
+		return sb.toString();
+	}
+
+	// Milliseconds with three decimals, none for NaN
+	private static String millis ( double ms, String none )
+	{
+		return Double.isNaN( ms ) ? none : String.format( Locale.ROOT, "%.3f", ms );
+	}
+
+	private static double parseMillis ( String field )
+	{
+		return field.isEmpty() ? Double.NaN : Double.parseDouble( field );
+	}
+
+	/**
+	 * Reads the rows of a CSV written by writeCsv. Files written before
+	 * the max_ms column was added are read too.
+	 */
+	static List<Result> readCsv ( String file ) throws IOException
+	{
+		List<Result> results = new ArrayList<Result>();
+		BufferedReader in = new BufferedReader( new FileReader( file ) );
+		try
+		{
+			String line;
+			while ( ( line = in.readLine() ) != null )
+			{
+				String[] fields = line.split( ",", -1 );
+				if ( line.startsWith( "combination," ) || ( fields.length != 10 && fields.length != 11 ) )
+					continue;
+
+				int k = fields.length - 10;    // 1 with the max_ms column
+				Result r = new Result();
+				r.combination = fields[0];
+				r.board = fields[1];
+				r.status = fields[2];
+				r.trials = Integer.parseInt( fields[3] );
+				r.p50 = parseMillis( fields[4] );
+				r.p95 = parseMillis( fields[5] );
+				r.p99 = parseMillis( fields[6] );
+				r.max = k == 1 ? parseMillis( fields[7] ) : Double.NaN;
+				r.nodes = Long.parseLong( fields[7 + k] );
+				r.pushes = Long.parseLong( fields[8 + k] );
+				r.backtracks = Long.parseLong( fields[9 + k] );
+				results.add( r );
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		return results;
+	}
+}
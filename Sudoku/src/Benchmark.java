@@ -0,0 +1,366 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Micro benchmarks of the solver hot paths.
+ *
+ * Each benchmark runs warmup iterations and then measured iterations of a
+ * fixed duration, and reports the average time per operation with its
+ * standard deviation over the measured iterations. Benchmarks that depend
+ * on the heuristics run once per heuristic combination.
+ *
+ *     java Benchmark [options] [board directories...]
+ *
+ *     -warmup <n>        warmup iterations, default 3
+ *     -iterations <n>    measured iterations, default 5
+ *     -time <ms>         duration of one iteration, default 500
+ *     -bench <name>      only run the benchmarks whose name starts with name
+ *     -combo "<tokens>"  a combination of Main's heuristic tokens, can be
+ *                        repeated, default DEFAULT_COMBINATIONS
+ *
+ * Without directories the boards of Sudoku/boards and boards are used.
+ */
+
+public class Benchmark
+{
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	public static final String[] DEFAULT_COMBINATIONS =
+	{
+		"MRV FC", "MRV LCV FC", "MAD LCV NOR", "MRV AC3", "MRV HALL", "MRV ALLDIFF", "MAD LCV ALLDIFF"
+	};
+
+	// Operation results are added here so the JIT cannot drop the work
+	private static volatile long sink;
+
+	private int warmup = 3;
+	private int iterations = 5;
+	private long iterationNanos = 500 * 1000000L;
+	private String filter = "";
+
+	private List<SudokuBoard> boards = new ArrayList<SudokuBoard>();
+	private List<String> combinations = new ArrayList<String>();
+
+	// One operation to measure, returns a value that depends on its work
+	private static abstract class Operation
+	{
+		abstract long run ( );
+	}
+
+	// A solver of one board, stopped at the root with its first branch
+	private static class RootNode
+	{
+		BTSolver solver;
+		Variable variable;
+		int value;
+	}
+
+	// =================================================================
+	// Entry Point
+	// =================================================================
+
+	public static void main ( String[] args )
+	{
+		Benchmark bench = new Benchmark();
+		List<String> dirs = new ArrayList<String>();
+
+		for ( int i = 0; i < args.length; ++i )
+		{
+			String token = args[i];
+
+			if ( token.equals( "-warmup" ) && i + 1 < args.length )
+				bench.warmup = Integer.parseInt( args[++i] );
+
+			else if ( token.equals( "-iterations" ) && i + 1 < args.length )
+				bench.iterations = Integer.parseInt( args[++i] );
+
+			else if ( token.equals( "-time" ) && i + 1 < args.length )
+				bench.iterationNanos = Long.parseLong( args[++i] ) * 1000000L;
+
+			else if ( token.equals( "-bench" ) && i + 1 < args.length )
+				bench.filter = args[++i];
+
+			else if ( token.equals( "-combo" ) && i + 1 < args.length )
+				bench.combinations.add( args[++i] );
+
+			else
+				dirs.add( token );
+		}
+
+		if ( dirs.isEmpty() )
+			dirs = Arrays.asList( "Sudoku/boards", "boards" );
+
+		if ( bench.combinations.isEmpty() )
+			bench.combinations.addAll( Arrays.asList( DEFAULT_COMBINATIONS ) );
+
+		for ( String dir : dirs )
+			bench.boards.addAll( loadBoards( new File( dir ) ) );
+
+		if ( bench.boards.isEmpty() )
+		{
+			System.out.println( "[ERROR] No boards found in " + dirs );
+			return;
+		}
+
+		System.out.println( bench.boards.size() + " boards, " + bench.warmup + " warmup and "
+		                    + bench.iterations + " measured iterations of "
+		                    + bench.iterationNanos / 1000000 + " ms" );
+		bench.runAll();
+	}
+
+	// Reads every board file of dir, in name order, skipping malformed ones
+	static List<SudokuBoard> loadBoards ( File dir )
+	{
+		List<SudokuBoard> result = new ArrayList<SudokuBoard>();
+		File[] files = dir.listFiles();
+
+		if ( files == null )
+			return result;
+
+		Arrays.sort( files );
+		for ( File f : files )
+		{
+			if ( ! f.isFile() )
+				continue;
+
+			try
+			{
+				result.add( new SudokuBoard( f ) );
+			}
+			catch ( IllegalArgumentException e )
+			{
+				System.out.println( "[ERROR] Skipping " + f + ": " + e.getMessage() );
+			}
+		}
+
+		return result;
+	}
+
+	// =================================================================
+	// Benchmarks
+	// =================================================================
+
+	private void runAll ( )
+	{
+		final List<ConstraintNetwork> networks = new ArrayList<ConstraintNetwork>();
+		for ( SudokuBoard board : boards )
+			networks.add( new ConstraintNetwork( board ) );
+
+		// ConstraintNetwork construction, one board per operation
+		measure( "construction", new Operation()
+		{
+			int next = 0;
+
+			long run ( )
+			{
+				return new ConstraintNetwork( boards.get( next++ % boards.size() ) ).getVariables().size();
+			}
+		} );
+
+		// getNeighborsOfVariable for every cell of one board per operation
+		measure( "neighbors", new Operation()
+		{
+			int next = 0;
+
+			long run ( )
+			{
+				long sum = 0;
+				ConstraintNetwork network = networks.get( next++ % networks.size() );
+				for ( Variable v : network.getVariables() )
+					sum += network.getNeighborsOfVariable( v ).size();
+
+				return sum;
+			}
+		} );
+
+		// Trail push of every cell of one board and a single undo
+		measure( "trail", new Operation()
+		{
+			Trail trail = new Trail();
+			int next = 0;
+
+			long run ( )
+			{
+				List<Variable> variables = networks.get( next++ % networks.size() ).getVariables();
+				trail.placeTrailMarker();
+				for ( int i = 0; i < variables.size(); ++i )
+					trail.push( variables.get( i ) );
+
+				trail.undo();
+				return trail.size();
+			}
+		} );
+
+		for ( String combination : combinations )
+			runCombination( combination );
+	}
+
+	// The benchmarks that depend on the heuristics
+	private void runCombination ( String combination )
+	{
+		final String[] heuristics = parseCombination( combination );
+		final List<RootNode> nodes = rootNodes( heuristics );
+
+		if ( nodes.isEmpty() )
+		{
+			System.out.println( "[" + combination + "] solves every board at the root" );
+			return;
+		}
+
+		// getMRV and the other variable heuristics at the root
+		measure( "select [" + combination + "]", new Operation()
+		{
+			int next = 0;
+
+			long run ( )
+			{
+				return nodes.get( next++ % nodes.size() ).solver.getBranchVariable().getId();
+			}
+		} );
+
+		// getValuesLCVOrder and the other value heuristics at the root
+		measure( "values [" + combination + "]", new Operation()
+		{
+			int[] out = new int[64];
+			int next = 0;
+
+			long run ( )
+			{
+				RootNode node = nodes.get( next++ % nodes.size() );
+				if ( out.length < node.variable.size() )
+					out = new int[node.variable.size()];
+
+				return node.solver.getBranchValues( node.variable, out );
+			}
+		} );
+
+		// forwardChecking, norvigCheck... after the first branch at the root
+		measure( "propagate [" + combination + "]", new Operation()
+		{
+			int next = 0;
+
+			long run ( )
+			{
+				RootNode node = nodes.get( next++ % nodes.size() );
+				boolean consistent = node.solver.tryAssignment( node.variable, node.value );
+				node.solver.undoAssignment();
+				return consistent ? 1 : 0;
+			}
+		} );
+
+		// A full solve of one board per operation
+		measure( "solve [" + combination + "]", new Operation()
+		{
+			int next = 0;
+
+			long run ( )
+			{
+				SudokuBoard board = boards.get( next++ % boards.size() );
+				BTSolver solver = new BTSolver( board, new Trail(), heuristics[0], heuristics[1], heuristics[2] );
+				solver.solve();
+				return solver.hasSolution() ? 1 : 0;
+			}
+		} );
+	}
+
+	// Solvers propagated at the root, for the boards that need a branch
+	private List<RootNode> rootNodes ( String[] heuristics )
+	{
+		List<RootNode> nodes = new ArrayList<RootNode>();
+		int[] values = new int[64];
+
+		for ( SudokuBoard board : boards )
+		{
+			RootNode node = new RootNode();
+			node.solver = new BTSolver( board, new Trail(), heuristics[0], heuristics[1], heuristics[2] );
+
+			if ( ! node.solver.propagateRoot() )
+				continue;
+
+			node.variable = node.solver.getBranchVariable();
+			if ( node.variable == null )
+				continue;
+
+			if ( values.length < node.variable.size() )
+				values = new int[node.variable.size()];
+
+			node.solver.getBranchValues( node.variable, values );
+			node.value = values[0];
+			nodes.add( node );
+		}
+
+		return nodes;
+	}
+
+	// Converts Main's tokens to the value heuristic, variable heuristic
+	// and consistency check
+	static String[] parseCombination ( String combination )
+	{
+		String[] heuristics = { "", "", "" };
+		for ( String token : combination.trim().split( "\\s+" ) )
+			if ( ! token.isEmpty() && ! Main.applyHeuristicToken( token, heuristics ) )
+				throw new IllegalArgumentException( "Unknown heuristic token: " + token );
+
+		return heuristics;
+	}
+
+	// =================================================================
+	// Measurement
+	// =================================================================
+
+	private void measure ( String name, Operation op )
+	{
+		if ( ! name.startsWith( filter ) )
+			return;
+
+		for ( int i = 0; i < warmup; ++i )
+			iteration( op );
+
+		double[] nanosPerOp = new double[iterations];
+		long totalOps = 0;
+
+		for ( int i = 0; i < iterations; ++i )
+		{
+			long[] result = iteration( op );
+			nanosPerOp[i] = (double) result[1] / result[0];
+			totalOps += result[0];
+		}
+
+		double mean = 0;
+		for ( double t : nanosPerOp )
+			mean += t;
+		mean /= iterations;
+
+		double variance = 0;
+		for ( double t : nanosPerOp )
+			variance += ( t - mean ) * ( t - mean );
+		double deviation = iterations > 1 ? Math.sqrt( variance / ( iterations - 1 ) ) : 0;
+
+		System.out.println( String.format( "%-36s %14.1f +- %10.1f ns/op %10d ops",
+		                                   name, mean, deviation, totalOps ) );
+	}
+
+	// Runs op for one iteration, returns the operation count and the nanos
+	private long[] iteration ( Operation op )
+	{
+		long ops = 0;
+		long result = 0;
+		long start = System.nanoTime();
+		long elapsed;
+
+		do
+		{
+			result += op.run();
+			ops++;
+			elapsed = System.nanoTime() - start;
+		}
+		while ( elapsed < iterationNanos );
+
+		sink += result;
+		return new long[] { ops, elapsed };
+	}
+}
@@ -0,0 +1,29 @@
+/**
+ * Thrown when a board file or puzzle line is malformed. The line and
+ * column count from 1 and point at the offending input.
+ */
+
+public class BoardFormatException extends IllegalArgumentException
+{
+	private static final long serialVersionUID = 1L;
+
+	private final int line;
+	private final int column;
+
+	public BoardFormatException ( String message, int line, int column )
+	{
+		super( "Line " + line + ", column " + column + ": " + message );
+		this.line = line;
+		this.column = column;
+	}
+
+	public int getLine ( )
+	{
+		return line;
+	}
+
+	public int getColumn ( )
+	{
+		return column;
+	}
+}
@@ -0,0 +1,212 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Parses the board file format: the block dimensions p and q as decimal
+ * numbers, followed by the N*N cells (N = p*q) in row major order as base
+ * 36 numbers, 0 for an empty cell. Tokens are separated by any white space.
+ *
+ * The parser works on the raw bytes and keeps its buffers, so parsing
+ * many boards with one parser allocates nothing but the boards built by
+ * toBoard(). Malformed input throws a BoardFormatException with the line
+ * and column of the problem.
+ */
+
+public class BoardParser
+{
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	// Largest N accepted, guards against allocating for garbage input
+	private static final int MAX_N = 1024;
+
+	private byte[] buffer = new byte[4096];
+	private int[] cells = new int[0];
+	private int p, q;
+
+	// Tokenizer state
+	private byte[] data;
+	private int length;
+	private int pos;
+	private int line;
+	private int lineStart;
+
+	// =================================================================
+	// Accessors
+	// =================================================================
+
+	public int getP ( )
+	{
+		return p;
+	}
+
+	public int getQ ( )
+	{
+		return q;
+	}
+
+	public int getN ( )
+	{
+		return p * q;
+	}
+
+	/**
+	 * The cells of the last board parsed, cell i*N+j holds row i and
+	 * column j. The array is reused by the next parse, and may be longer
+	 * than N*N.
+	 */
+	public int[] getCells ( )
+	{
+		return cells;
+	}
+
+	// Builds a SudokuBoard of the last board parsed
+	public SudokuBoard toBoard ( )
+	{
+		return new SudokuBoard( p, q, copyGrid() );
+	}
+
+	// Returns the cells of the last board parsed as a new N x N grid
+	public int[][] copyGrid ( )
+	{
+		int n = getN();
+		int[][] grid = new int[n][n];
+
+		for ( int i = 0; i < n; ++i )
+			System.arraycopy( cells, i * n, grid[i], 0, n );
+
+		return grid;
+	}
+
+	// =================================================================
+	// Parsing
+	// =================================================================
+
+	// Reads and parses a whole board file
+	public void parse ( File file ) throws IOException
+	{
+		FileInputStream in = new FileInputStream( file );
+		try
+		{
+			long size = in.getChannel().size();
+			if ( size > Integer.MAX_VALUE - 8 )
+				throw new IOException( "File too large: " + file );
+
+			if ( buffer.length < size )
+				buffer = new byte[(int) size];
+
+			int count = 0;
+			int read;
+			while ( count < size && ( read = in.read( buffer, count, (int) size - count ) ) > 0 )
+				count += read;
+
+			parse( buffer, count );
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	// Parses the first length bytes of data
+	public void parse ( byte[] data, int length )
+	{
+		this.data = data;
+		this.length = length;
+		this.pos = 0;
+		this.line = 1;
+		this.lineStart = 0;
+
+		p = nextNumber( 10, "p" );
+		q = nextNumber( 10, "q" );
+
+		// p and q are bounded before they are multiplied, so N cannot overflow
+		if ( p < 1 || q < 1 || p > MAX_N || q > MAX_N || p * q > MAX_N )
+			throw error( "Block size " + p + "x" + q + " is not supported" );
+
+		int n = p * q;
+		if ( cells.length < n * n )
+			cells = new int[n * n];
+
+		for ( int k = 0; k < n * n; ++k )
+		{
+			if ( ! skipSpace() )
+				throw error( "Expected " + n * n + " cells, found " + k );
+
+			int tokenColumn = pos - lineStart + 1;
+			int value = nextNumber( 36, "cell" );
+			if ( value > n )
+				throw new BoardFormatException( "Value " + Integer.toString( value, 36 ).toUpperCase()
+				                                + " is larger than " + n, line, tokenColumn );
+			cells[k] = value;
+		}
+
+		this.data = null;
+	}
+
+	// Reads one number in radix, what names it in errors
+	private int nextNumber ( int radix, String what )
+	{
+		if ( ! skipSpace() )
+			throw error( "Expected " + what );
+
+		int value = 0;
+		while ( pos < length && ! isSpace( data[pos] ) )
+		{
+			int digit = digit( data[pos], radix );
+			if ( digit < 0 )
+				throw error( "Unexpected character '" + (char) ( data[pos] & 0xFF ) + "' in " + what );
+
+			if ( value > ( Integer.MAX_VALUE - digit ) / radix )
+				throw error( "Number too large in " + what );
+
+			value = value * radix + digit;
+			pos++;
+		}
+
+		return value;
+	}
+
+	// Skips white space, returns false at the end of the input
+	private boolean skipSpace ( )
+	{
+		while ( pos < length && isSpace( data[pos] ) )
+		{
+			if ( data[pos] == '\n' )
+			{
+				line++;
+				lineStart = pos + 1;
+			}
+			pos++;
+		}
+
+		return pos < length;
+	}
+
+	private static boolean isSpace ( byte c )
+	{
+		return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f';
+	}
+
+	// Value of a digit in radix, or -1
+	private static int digit ( byte c, int radix )
+	{
+		int d = -1;
+
+		if ( c >= '0' && c <= '9' )
+			d = c - '0';
+		else if ( c >= 'A' && c <= 'Z' )
+			d = c - 'A' + 10;
+		else if ( c >= 'a' && c <= 'z' )
+			d = c - 'a' + 10;
+
+		return d < radix ? d : -1;
+	}
+
+	private BoardFormatException error ( String message )
+	{
+		return new BoardFormatException( message, line, pos - lineStart + 1 );
+	}
+}
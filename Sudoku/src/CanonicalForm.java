@@ -0,0 +1,584 @@
+import java.util.Arrays;
+
+/**
+ * The canonical form of a board under the symmetries of Sudoku: digits
+ * relabelled, rows permuted within their band, bands permuted, columns
+ * permuted within their stack, stacks permuted, and the board transposed
+ * when the blocks are square (p == q). Boards that are variants of each
+ * other have equal forms, so a form is a key for their common solution.
+ *
+ * The form is the lexicographically smallest row major grid over all
+ * the symmetries, with the digits numbered in order of appearance and 0
+ * for empty cells. It is found by branch and bound: a column is only
+ * tried when it gives the smallest first row possible, then a row only
+ * when it is the smallest possible at its position. When there are more
+ * than MAX_COLUMN_ORDERS column orders, or the search places more than
+ * MAX_NODES rows, only the digits are relabelled and the board keeps its
+ * orientation.
+ *
+ * A form remembers its transform, to map solutions between the board
+ * and the canonical grid.
+ */
+
+public class CanonicalForm
+{
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	private static final long MAX_COLUMN_ORDERS = 1L << 17;
+	private static final long MAX_NODES = 1L << 18;
+
+	private final int p, q, n;
+	private final int[] cells;      // canonical grid, row major
+	private final int hash;
+
+	// Canonical cell (r, c) is cell (rowOrder[r], colOrder[c]) of the
+	// board, transposed first if transposed, its value v relabelled to
+	// labels[v]. values is the inverse of labels.
+	private final boolean transposed;
+	private final int[] rowOrder;
+	private final int[] colOrder;
+	private final int[] labels;
+	private final int[] values;
+	private final boolean reduced;
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	private CanonicalForm ( Search s )
+	{
+		this.p = s.p;
+		this.q = s.q;
+		this.n = s.n;
+		this.cells = s.bestCells;
+		this.transposed = s.bestTransposed;
+		this.rowOrder = s.bestRows;
+		this.colOrder = s.bestCols;
+		this.reduced = s.reduced;
+		this.hash = 31 * ( 31 * p + q ) + Arrays.hashCode( cells );
+
+		// Digits without a given take the remaining labels in order
+		labels = s.bestLabels;
+		int next = s.bestNextLabel;
+		for ( int v = 1; v <= n; ++v )
+			if ( labels[v] == 0 )
+				labels[v] = next++;
+
+		values = new int[n + 1];
+		for ( int v = 0; v <= n; ++v )
+			values[labels[v]] = v;
+	}
+
+	// Computes the canonical form of board
+	public static CanonicalForm of ( SudokuBoard board )
+	{
+		Search s = new Search( board );
+		s.run();
+		return new CanonicalForm( s );
+	}
+
+	// The form with only the digits relabelled, in one pass over board
+	public static CanonicalForm relabelled ( SudokuBoard board )
+	{
+		Search s = new Search( board );
+		s.relabelOnly();
+		return new CanonicalForm( s );
+	}
+
+	// =================================================================
+	// Accessors
+	// =================================================================
+
+	// False when only the digits were relabelled
+	public boolean isReduced ( )
+	{
+		return reduced;
+	}
+
+	// The canonical grid, row major
+	public int[] getCells ( )
+	{
+		return cells.clone();
+	}
+
+	// =================================================================
+	// Transforms
+	// =================================================================
+
+	// Maps a board of the same orientation as the original, such as its
+	// solution, to the canonical grid, row major
+	public int[] toCanonical ( SudokuBoard board )
+	{
+		int[][] grid = board.getBoard();
+		int[] out = new int[n * n];
+
+		for ( int r = 0; r < n; ++r )
+		{
+			for ( int c = 0; c < n; ++c )
+			{
+				int i = rowOrder[r], j = colOrder[c];
+				out[r * n + c] = labels[transposed ? grid[j][i] : grid[i][j]];
+			}
+		}
+
+		return out;
+	}
+
+	// Maps a canonical grid, such as a cached solution, back to a board
+	// in the orientation and digits of the original
+	public SudokuBoard fromCanonical ( int[] canonical )
+	{
+		int[][] grid = new int[n][n];
+
+		for ( int r = 0; r < n; ++r )
+		{
+			for ( int c = 0; c < n; ++c )
+			{
+				int i = rowOrder[r], j = colOrder[c];
+				int v = values[canonical[r * n + c]];
+
+				if ( transposed )
+					grid[j][i] = v;
+				else
+					grid[i][j] = v;
+			}
+		}
+
+		return new SudokuBoard( p, q, grid );
+	}
+
+	// =================================================================
+	// Equality
+	// =================================================================
+
+	@Override
+	public boolean equals ( Object o )
+	{
+		if ( ! ( o instanceof CanonicalForm ) )
+			return false;
+
+		CanonicalForm other = (CanonicalForm) o;
+		return p == other.p && q == other.q && hash == other.hash && Arrays.equals( cells, other.cells );
+	}
+
+	@Override
+	public int hashCode ( )
+	{
+		return hash;
+	}
+
+	// =================================================================
+	// Search
+	// =================================================================
+
+	private static class Search
+	{
+		final int p, q, n;
+		final int[][] board;
+		int[][] grid;               // board in the orientation being searched
+		boolean transposed;
+
+		// Column order being searched, and the row order built on it
+		final int[] colOrder;
+		final boolean[] usedColumn;
+		final boolean[] usedStack;
+		final int[] rowOrder;
+		final boolean[] usedRow;
+		final boolean[] usedBand;
+
+		// Labels given to the digits so far, undone through labelStack
+		final int[] label;
+		final int[] labelStack;
+		int labelCount;
+		int nextLabel;
+		final int[] tentative;
+
+		// Rows placed so far, and the smallest candidate per position
+		final int[] curCells;
+		final int[][] minRow;
+		final int[] rowBuffer;
+
+		long nodes;
+		boolean aborted;
+		boolean reduced = true;
+
+		// Best form found
+		int[] bestCells;
+		int[] bestRows;
+		int[] bestCols;
+		int[] bestLabels;
+		int bestNextLabel;
+		boolean bestTransposed;
+
+		Search ( SudokuBoard sboard )
+		{
+			p = sboard.getP();
+			q = sboard.getQ();
+			n = p * q;
+			board = sboard.getBoard();
+
+			colOrder   = new int[n];
+			usedColumn = new boolean[n];
+			usedStack  = new boolean[p];
+			rowOrder   = new int[n];
+			usedRow    = new boolean[n];
+			usedBand   = new boolean[q];
+			label      = new int[n + 1];
+			labelStack = new int[n];
+			tentative  = new int[n + 1];
+			curCells   = new int[n * n];
+			minRow     = new int[n][n];
+			rowBuffer  = new int[n];
+		}
+
+		void run ( )
+		{
+			if ( columnOrders() <= MAX_COLUMN_ORDERS )
+			{
+				long allRows = ( 1L << n ) - 1;
+
+				grid = board;
+				transposed = false;
+				columns( 0, allRows, 0, false );
+
+				if ( p == q && ! aborted )
+				{
+					grid = transpose( board );
+					transposed = true;
+					columns( 0, allRows, 0, bestCells != null );
+				}
+
+				if ( ! aborted )
+					return;
+			}
+
+			relabelOnly();
+		}
+
+		// Column orders times orientations, p! (q!)^p, doubled when p == q
+		private double columnOrders ( )
+		{
+			double count = factorial( p ) * Math.pow( factorial( q ), p );
+			return p == q ? 2 * count : count;
+		}
+
+		private static double factorial ( int k )
+		{
+			double f = 1;
+			for ( int i = 2; i <= k; ++i )
+				f *= i;
+
+			return f;
+		}
+
+		private static int[][] transpose ( int[][] b )
+		{
+			int[][] t = new int[b.length][b.length];
+			for ( int i = 0; i < b.length; ++i )
+				for ( int j = 0; j < b.length; ++j )
+					t[j][i] = b[i][j];
+
+			return t;
+		}
+
+		/**
+		 * Enumerates the column orders from position c that keep row 0
+		 * smallest, searching the rows of each. viable are the rows that
+		 * can still come first, as a bit set, givens the digits in their
+		 * first c cells: a row of a valid board holds distinct digits, so
+		 * its cells number as 0 for empty and givens + 1 for a digit.
+		 * prefixEqual tells whether row 0 so far equals that of the best
+		 * form.
+		 *
+		 * Return: true if the best form was replaced
+		 */
+		private boolean columns ( int c, long viable, int givens, boolean prefixEqual )
+		{
+			if ( aborted )
+				return false;
+
+			if ( c == n )
+			{
+				Arrays.fill( label, 0 );
+				labelCount = 0;
+				nextLabel = 1;
+				return rows( 0, bestCells != null );
+			}
+
+			// Columns that may come at c: any column of an unused stack to
+			// start a stack, else an unused column of the current stack
+			int from, to;
+			boolean newStack = c % q == 0;
+			if ( newStack )
+			{
+				from = 0;
+				to = n;
+			}
+			else
+			{
+				from = colOrder[c - 1] / q * q;
+				to = from + q;
+			}
+
+			// Smallest value row 0 can have at c
+			int min = givens + 1;
+			for ( int j = from; j < to && min > 0; ++j )
+				if ( isAllowed( j, newStack ) && ( emptyRows( j, viable ) != 0 ) )
+					min = 0;
+
+			if ( prefixEqual )
+			{
+				if ( min > bestCells[c] )
+					return false;
+
+				prefixEqual = min == bestCells[c];
+			}
+
+			boolean replaced = false;
+			for ( int j = from; j < to && ! aborted; ++j )
+			{
+				if ( ! isAllowed( j, newStack ) )
+					continue;
+
+				long empty = emptyRows( j, viable );
+				if ( min == 0 && empty == 0 )
+					continue;
+
+				if ( newStack )
+					usedStack[j / q] = true;
+				usedColumn[j] = true;
+				colOrder[c] = j;
+
+				if ( columns( c + 1, min == 0 ? empty : viable, min == 0 ? givens : givens + 1, prefixEqual ) )
+				{
+					replaced = true;
+					prefixEqual = true;
+				}
+
+				usedColumn[j] = false;
+				if ( newStack )
+					usedStack[j / q] = false;
+			}
+
+			return replaced;
+		}
+
+		private boolean isAllowed ( int j, boolean newStack )
+		{
+			return newStack ? ! usedStack[j / q] : ! usedColumn[j];
+		}
+
+		// The rows of viable that are empty in column j
+		private long emptyRows ( int j, long viable )
+		{
+			long empty = 0;
+			for ( int i = 0; i < n; ++i )
+				if ( ( viable >>> i & 1 ) != 0 && grid[i][j] == 0 )
+					empty |= 1L << i;
+
+			return empty;
+		}
+
+		/**
+		 * Places the rows from position r, only trying the rows that are
+		 * smallest at r. prefixEqual tells whether the rows placed so far
+		 * equal those of the best form.
+		 *
+		 * Return: true if the best form was replaced
+		 */
+		private boolean rows ( int r, boolean prefixEqual )
+		{
+			if ( r == n )
+			{
+				if ( prefixEqual )
+					return false;
+
+				saveBest();
+				return true;
+			}
+
+			if ( ++nodes > MAX_NODES )
+			{
+				aborted = true;
+				return false;
+			}
+
+			int bandStart = r % p == 0 ? -1 : rowOrder[r - r % p] / p * p;
+			int[] min = minRow[r];
+			boolean found = false;
+
+			// Smallest row that can come next
+			for ( int i = 0; i < n; ++i )
+			{
+				if ( ! isCandidate( i, bandStart ) )
+					continue;
+
+				encode( i, rowBuffer );
+				if ( ! found || compare( rowBuffer, 0, min, 0 ) < 0 )
+				{
+					System.arraycopy( rowBuffer, 0, min, 0, n );
+					found = true;
+				}
+			}
+
+			if ( prefixEqual )
+			{
+				int cmp = compare( min, 0, bestCells, r * n );
+				if ( cmp > 0 )
+					return false;
+
+				prefixEqual = cmp == 0;
+			}
+
+			boolean replaced = false;
+			for ( int i = 0; i < n && ! aborted; ++i )
+			{
+				if ( ! isCandidate( i, bandStart ) )
+					continue;
+
+				encode( i, rowBuffer );
+				if ( compare( rowBuffer, 0, min, 0 ) != 0 )
+					continue;
+
+				int mark = labelCount;
+				placeRow( r, i );
+
+				if ( rows( r + 1, prefixEqual ) )
+				{
+					// The best form now starts with the rows placed here
+					replaced = true;
+					prefixEqual = true;
+				}
+
+				removeRow( i, mark );
+			}
+
+			return replaced;
+		}
+
+		// A new band may start with any row of an unused band, else the
+		// row must be an unused row of the current band
+		private boolean isCandidate ( int i, int bandStart )
+		{
+			if ( usedRow[i] )
+				return false;
+
+			if ( bandStart < 0 )
+				return ! usedBand[i / p];
+
+			return i >= bandStart && i < bandStart + p;
+		}
+
+		// Writes row i under the column order and the labels so far,
+		// labelling new digits as they would be if the row was placed
+		private void encode ( int i, int[] out )
+		{
+			int[] row = grid[i];
+			int next = nextLabel;
+
+			for ( int c = 0; c < n; ++c )
+			{
+				int v = row[colOrder[c]];
+				if ( v == 0 )
+					out[c] = 0;
+				else if ( label[v] != 0 )
+					out[c] = label[v];
+				else
+				{
+					if ( tentative[v] == 0 )
+						tentative[v] = next++;
+					out[c] = tentative[v];
+				}
+			}
+
+			for ( int c = 0; c < n; ++c )
+				tentative[row[colOrder[c]]] = 0;
+		}
+
+		private void placeRow ( int r, int i )
+		{
+			int[] row = grid[i];
+			for ( int c = 0; c < n; ++c )
+			{
+				int v = row[colOrder[c]];
+				if ( v != 0 && label[v] == 0 )
+				{
+					label[v] = nextLabel++;
+					labelStack[labelCount++] = v;
+				}
+				curCells[r * n + c] = v == 0 ? 0 : label[v];
+			}
+
+			rowOrder[r] = i;
+			usedRow[i] = true;
+			if ( r % p == 0 )
+				usedBand[i / p] = true;
+		}
+
+		private void removeRow ( int i, int mark )
+		{
+			while ( labelCount > mark )
+			{
+				label[labelStack[--labelCount]] = 0;
+				nextLabel--;
+			}
+
+			usedRow[i] = false;
+
+			// The first row of a band is the only one whose band is unused
+			boolean bandInUse = false;
+			for ( int k = i / p * p; k < i / p * p + p; ++k )
+				bandInUse |= usedRow[k];
+
+			if ( ! bandInUse )
+				usedBand[i / p] = false;
+		}
+
+		private void saveBest ( )
+		{
+			bestCells = curCells.clone();
+			bestRows = rowOrder.clone();
+			bestCols = colOrder.clone();
+			bestLabels = label.clone();
+			bestNextLabel = nextLabel;
+			bestTransposed = transposed;
+		}
+
+		// The board in its own orientation, digits numbered by appearance
+		void relabelOnly ( )
+		{
+			reduced = false;
+			transposed = false;
+			grid = board;
+			Arrays.fill( label, 0 );
+			labelCount = 0;
+			nextLabel = 1;
+
+			for ( int k = 0; k < n; ++k )
+			{
+				colOrder[k] = k;
+				usedRow[k] = false;
+			}
+			Arrays.fill( usedBand, false );
+
+			for ( int r = 0; r < n; ++r )
+				placeRow( r, r );
+
+			saveBest();
+		}
+
+		private int compare ( int[] a, int aFrom, int[] b, int bFrom )
+		{
+			for ( int k = 0; k < n; ++k )
+			{
+				int d = a[aFrom + k] - b[bFrom + k];
+				if ( d != 0 )
+					return d;
+			}
+
+			return 0;
+		}
+	}
+}
@@ -14,6 +14,7 @@ public class Constraint
 	// =================================================================
 
 	public List<Variable> vars;
+	private int id = -1;
 
 	// =================================================================
 	// Constructors
@@ -38,6 +39,12 @@ public class Constraint
 		vars.add( v );
 	}
 
+	// Set by ConstraintNetwork when the constraint is added to it
+	void setId ( int id )
+	{
+		this.id = id;
+	}
+
 	// =================================================================
 	// Accessors
 	// =================================================================
@@ -47,6 +54,12 @@ public class Constraint
 		return vars.size();
 	}
 
+	// Returns the index of the constraint in its ConstraintNetwork, or -1
+	public int getId ( )
+	{
+		return id;
+	}
+
 	// Returns true if v is in the constraint, false otherwise
 	public boolean contains ( Variable v )
 	{
@@ -77,7 +90,7 @@ public class Constraint
 					continue;
 
 				if ( otherVar.isAssigned()
-					 && otherVar.getAssignment() == var.getAssignment() )
+					 && otherVar.getAssignment().intValue() == var.getAssignment().intValue() )
 					return false;
 			}
 		}
@@ -16,6 +16,14 @@ public class ConstraintNetwork
 	private List<Constraint> constraints;
 	private List<Variable> variables;
 
+	// Cell storage of the variables of a board network, null otherwise
+	private VariableStore store;
+
+	// Adjacency tables indexed by variable id, built on first use
+	private List<List<Variable>> neighborTable;
+	private List<List<Constraint>> constraintTable;
+	private int[][] neighborIds;
+
 	// =================================================================
 	// Constructors
 	// =================================================================
@@ -26,103 +34,105 @@ public class ConstraintNetwork
 		constraints = new ArrayList<Constraint>();
 	}
 
+	/**
+	 * Builds the network of a board: one variable per cell in row major
+	 * order, then the row, column and block constraints in that order.
+	 *
+	 * Cell i*N+j is in row i, column j and block (i/p)*p + j/q. The cells
+	 * of each constraint are computed directly from p and q, so nothing
+	 * is hashed or checked for duplicates.
+	 *
+	 * The cells are kept in a VariableStore and the variables are views
+	 * over it.
+	 */
 	public ConstraintNetwork ( SudokuBoard sboard )
 	{
 		int [][] board = sboard.getBoard();
+		int p = sboard.getP();
+		int q = sboard.getQ();
+		int n = sboard.getN();
 
-		List<Variable> temp = new ArrayList<Variable>();
-		int value = 0;
+		store = new VariableStore( n * n, n );
+		variables = new ArrayList<Variable>( n * n );
+		constraints = new ArrayList<Constraint>( 3 * n );
 
-		for ( int i = 0; i < sboard.getN(); i++ )
+		for ( int i = 0; i < n; i++ )
 		{
-			for ( int j = 0; j < sboard.getN(); j++ )
+			for ( int j = 0; j < n; j++ )
 			{
-				value = board[i][j];
-				List<Integer> domain = new ArrayList<Integer>();
+				int cell = i * n + j;
+				store.setCell( cell, i, j, ( i / p ) * p + j / q );
 
-				if (value == 0)
-				{
-					for (int d = 1; d <= sboard.getN(); d++)
-					{
-						domain.add(d);
-					}
-				}
+				Domain domain = store.domainView( cell );
+				if ( board[i][j] != 0 )
+					domain.add( board[i][j] );
 				else
-				{
-					domain.add(value);
-				}
-
-				int block = (i/sboard.getP() * sboard.getP()) + j/sboard.getQ();
+					for ( int d = 1; d <= n; ++d )
+						domain.add( d );
 
-				temp.add(new Variable(domain, i, j, block));
+				Variable v = new Variable( store, cell );
+				v.setId( variables.size() );
+				variables.add( v );
 			}
 		}
 
-		Map<Integer, List<Variable>> rows = new HashMap<Integer, List<Variable>>();
-		Map<Integer, List<Variable>> cols = new HashMap<Integer, List<Variable>>();
-		Map<Integer, List<Variable>> blocks = new HashMap<Integer, List<Variable>>();
-
-		for ( Variable v : temp )
+		// unitCells[u*n + k] is the k-th cell of constraint u:
+		// rows are units 0..n-1, columns n..2n-1, blocks 2n..3n-1
+		int[] unitCells = new int[3 * n * n];
+		for ( int u = 0; u < n; ++u )
 		{
-			int row = v.row();
-			int col = v.col();
-			int block = v.block();
+			int blockRow = ( u / p ) * p;
+			int blockCol = ( u % p ) * q;
 
-			if (!rows.containsKey(row))
+			for ( int k = 0; k < n; ++k )
 			{
-				rows.put(row, new ArrayList<Variable>());
+				unitCells[u * n + k]           = u * n + k;
+				unitCells[( n + u ) * n + k]   = k * n + u;
+				unitCells[( 2*n + u ) * n + k] = ( blockRow + k / q ) * n + blockCol + k % q;
 			}
+		}
 
-			if (!cols.containsKey(col))
-			{
-				cols.put(col, new ArrayList<Variable>());
-			}
+		for ( int u = 0; u < 3 * n; ++u )
+		{
+			List<Variable> vars = new ArrayList<Variable>( n );
+			for ( int k = 0; k < n; ++k )
+				vars.add( variables.get( unitCells[u * n + k] ) );
 
-			if (!blocks.containsKey(block))
-			{
-				blocks.put(block, new ArrayList<Variable>());
-			}
-			rows.get(row).add(v);
-			cols.get(col).add(v);
-			blocks.get(block).add(v);
+			Constraint c = new Constraint( vars );
+			c.setId( constraints.size() );
+			constraints.add( c );
 		}
+	}
 
-		variables = new ArrayList<Variable>();
-		constraints = new ArrayList<Constraint>();
+	/**
+	 * Deep copy of a network: every variable is copied with its current
+	 * domain and the constraints are rebuilt over the copies, keeping
+	 * the ids of the original. A board network copies its store and the
+	 * copies are views over the new store.
+	 */
+	public ConstraintNetwork ( ConstraintNetwork other )
+	{
+		variables = new ArrayList<Variable>( other.variables.size() );
+		constraints = new ArrayList<Constraint>( other.constraints.size() );
 
-		for ( Variable v : temp )
-		{
-			add(v);
-		}
+		if ( other.store != null )
+			store = new VariableStore( other.store );
 
-		for ( Entry<Integer, List<Variable>> e : rows.entrySet() )
+		for ( Variable v : other.variables )
 		{
-			Constraint c = new Constraint();
-			for ( Variable v : e.getValue() )
-			{
-				c.addVariable(v);
-			}
-			add(c);
+			Variable copy = store != null ? new Variable( store, v ) : new Variable( v );
+			copy.setId( variables.size() );
+			variables.add( copy );
 		}
 
-		for ( Entry<Integer, List<Variable>> e : cols.entrySet() )
+		for ( Constraint c : other.constraints )
 		{
-			Constraint c = new Constraint();
-			for ( Variable v : e.getValue() )
-			{
-				c.addVariable(v);
-			}
-			add(c);
-		}
+			Constraint copy = new Constraint();
+			for ( Variable v : c.vars )
+				copy.addVariable( variables.get( v.getId() ) );
 
-		for ( Entry<Integer, List<Variable>> e : blocks.entrySet() )
-		{
-			Constraint c = new Constraint();
-			for ( Variable v : e.getValue() )
-			{
-				c.addVariable(v);
-			}
-			add(c);
+			copy.setId( constraints.size() );
+			constraints.add( copy );
 		}
 	}
 
@@ -134,7 +144,9 @@ public class ConstraintNetwork
 	{
 		if ( ! constraints.contains( c ) )
 		{
+			c.setId( constraints.size() );
 			constraints.add( c );
+			invalidateAdjacencyTables();
 		}
 	}
 
@@ -142,7 +154,10 @@ public class ConstraintNetwork
 	{
 		if ( ! variables.contains( v ) )
 		{
+			store = null;
+			v.setId( variables.size() );
 			variables.add( v );
+			invalidateAdjacencyTables();
 		}
 	}
 
@@ -160,21 +175,39 @@ public class ConstraintNetwork
 		return variables;
 	}
 
-	// Returns all variables that share a constraint with v
+	// Returns the cell storage of a board network, or null if the network
+	// was built variable by variable
+	public VariableStore getStore ( )
+	{
+		return store;
+	}
+
+	/**
+	 * Returns all variables that share a constraint with v.
+	 *
+	 * The list is shared and unmodifiable, it is precomputed the first
+	 * time the adjacency tables are needed.
+	 */
 	public List<Variable> getNeighborsOfVariable ( Variable v )
 	{
-		Set<Variable> neighbors = new HashSet<Variable>();
+		if ( ! isMember( v ) )
+			return Collections.emptyList();
 
-		for ( Constraint c : constraints )
-		{
-			if ( c.contains( v ) )
-			{
-				neighbors.addAll( c.vars );
-			}
-		}
+		buildAdjacencyTables();
+		return neighborTable.get( v.getId() );
+	}
 
-		neighbors.remove( v );
-		return new ArrayList<Variable>( neighbors );
+	/**
+	 * Returns the ids of the neighbors of v, in the order of
+	 * getNeighborsOfVariable. The array is shared and must not be changed.
+	 */
+	public int[] getNeighborIds ( Variable v )
+	{
+		if ( ! isMember( v ) )
+			return new int[0];
+
+		buildAdjacencyTables();
+		return neighborIds[v.getId()];
 	}
 
 	// Returns true is every constraint is consistent
@@ -187,16 +220,14 @@ public class ConstraintNetwork
 		return true;
 	}
 
-	// Returns a list of constraints that contains v
+	// Returns a shared, unmodifiable list of constraints that contains v
 	public List<Constraint> getConstraintsContainingVariable ( Variable v )
 	{
-		List<Constraint> outList = new ArrayList<Constraint>();
-
-		for ( Constraint c : constraints )
-			if ( c.contains( v ) )
-				outList.add( c );
+		if ( ! isMember( v ) )
+			return Collections.emptyList();
 
-		return outList;
+		buildAdjacencyTables();
+		return constraintTable.get( v.getId() );
 	}
 
 	/**
@@ -223,6 +254,80 @@ public class ConstraintNetwork
 		return mConstraints;
 	}
 
+	// =================================================================
+	// Adjacency Tables
+	// =================================================================
+
+	private boolean isMember ( Variable v )
+	{
+		int id = v.getId();
+		return id >= 0 && id < variables.size() && variables.get( id ) == v;
+	}
+
+	private void invalidateAdjacencyTables ( )
+	{
+		neighborTable = null;
+		constraintTable = null;
+		neighborIds = null;
+	}
+
+	// Builds the neighbor and constraint membership lists of every variable
+	private void buildAdjacencyTables ( )
+	{
+		if ( neighborTable != null )
+			return;
+
+		int n = variables.size();
+
+		List<List<Constraint>> containing = new ArrayList<List<Constraint>>( n );
+		for ( int i = 0; i < n; ++i )
+			containing.add( new ArrayList<Constraint>() );
+
+		for ( Constraint c : constraints )
+			for ( Variable v : c.vars )
+				if ( isMember( v ) )
+					containing.get( v.getId() ).add( c );
+
+		List<List<Variable>> neighbors = new ArrayList<List<Variable>>( n );
+		List<List<Constraint>> memberships = new ArrayList<List<Constraint>>( n );
+		int[][] ids = new int[n][];
+
+		// seen[u] == i marks u as already collected for variable i
+		int[] seen = new int[n];
+		Arrays.fill( seen, -1 );
+
+		for ( int i = 0; i < n; ++i )
+		{
+			List<Variable> vNeighbors = new ArrayList<Variable>();
+			seen[i] = i;
+
+			for ( Constraint c : containing.get( i ) )
+			{
+				for ( Variable u : c.vars )
+				{
+					if ( isMember( u ) && seen[u.getId()] != i )
+					{
+						seen[u.getId()] = i;
+						vNeighbors.add( u );
+					}
+				}
+			}
+
+			Variable[] nArray = vNeighbors.toArray( new Variable[vNeighbors.size()] );
+			ids[i] = new int[nArray.length];
+			for ( int k = 0; k < nArray.length; ++k )
+				ids[i][k] = nArray[k].getId();
+
+			Constraint[] cArray = containing.get( i ).toArray( new Constraint[containing.get( i ).size()] );
+			neighbors.add( Collections.unmodifiableList( Arrays.asList( nArray ) ) );
+			memberships.add( Collections.unmodifiableList( Arrays.asList( cArray ) ) );
+		}
+
+		constraintTable = memberships;
+		neighborIds = ids;
+		neighborTable = neighbors;
+	}
+
 	// =================================================================
 	// String Representation
 	// =================================================================
@@ -1,10 +1,20 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * Represents the domain of a variable, i.e. the possible values that each
  * variable may assign.
+ *
+ * Values are positive integers stored as a bitmask, value v at bit (v-1),
+ * in 64 bit words. A domain owns its words and grows them as larger values
+ * are added, unless it is a view over a slice of a VariableStore, in which
+ * case its capacity is fixed by the store.
+ *
+ * Boards up to 64x64 need one word per domain, which the hot accessors
+ * test for first and then handle without loops or divisions.
  */
 
 public class Domain implements Iterable<Integer>
@@ -14,7 +24,12 @@ public class Domain implements Iterable<Integer>
 	// Properties
 	// =================================================================
 
-	private ArrayList<Integer> values = new ArrayList<Integer>();
+	private static final int WORD_BITS = 64;
+
+	private long[] words;   // word base+i holds values 64*i+1 .. 64*i+64
+	private int base;
+	private int length;
+	private boolean view;
 	private boolean modified;
 
 	// =================================================================
@@ -24,32 +39,47 @@ public class Domain implements Iterable<Integer>
 	// Constructs a domain with a single value
 	public Domain ( int value )
 	{
-		values.add(value);
+		this.words = new long[1];
+		this.length = 1;
+		add( value );
 	}
 
 	// Constructs a domain with an array of values
 	public Domain ( int[] values )
 	{
+		this.words = new long[1];
+		this.length = 1;
 		for ( int i = 0; i < values.length; ++i )
 		{
-			this.values.add( values[i] );
+			add( values[i] );
 		}
 	}
 
 	// Constructs a domain from a list of values
 	public Domain ( List<Integer> values )
 	{
-		this.values.clear();
-		this.values.addAll( values );
+		this.words = new long[1];
+		this.length = 1;
+		for ( Integer value : values )
+		{
+			add( value );
+		}
 	}
 
-	// Copy Constructor
+	// Copy Constructor, the copy always owns its words
 	public Domain ( Domain d )
 	{
-		for ( Integer value : d.getValues() )
-		{
-			this.values.add( value );
-		}
+		this.words = Arrays.copyOfRange( d.words, d.base, d.base + d.length );
+		this.length = d.length;
+	}
+
+	// A view over words[base .. base+length-1], which the caller owns
+	Domain ( long[] words, int base, int length )
+	{
+		this.words = words;
+		this.base = base;
+		this.length = length;
+		this.view = true;
 	}
 
 	// =================================================================
@@ -57,30 +87,56 @@ public class Domain implements Iterable<Integer>
 	// =================================================================
 
 	// Note, Domain is iterable. You can use "for ( Integer i : Domain )"
+	// Returns a new list with the values in ascending order
 	public ArrayList<Integer> getValues()
 	{
+		ArrayList<Integer> values = new ArrayList<Integer>( size() );
+
+		for ( int v = first(); v != 0; v = next( v ) )
+			values.add( v );
+
 		return values;
 	}
 
 	// Checks if value exists within the domain
 	public boolean contains ( int value )
 	{
-		if ( values.contains( value ) )
-			return true;
+		int bit = value - 1;
+
+		if ( bit < 0 )
+			return false;
 
-		return false;
+		if ( length == 1 )
+			return bit < WORD_BITS && ( words[base] & ( 1L << bit ) ) != 0;
+
+		int w = bit / WORD_BITS;
+		return w < length && ( words[base + w] & ( 1L << bit ) ) != 0;
 	}
 
 	// Returns number of values in the domain
 	public int size ( )
 	{
-		return values.size();
+		if ( length == 1 )
+			return Long.bitCount( words[base] );
+
+		int count = 0;
+		for ( int w = base; w < base + length; ++w )
+			count += Long.bitCount( words[w] );
+
+		return count;
 	}
 
 	// Returns true if no values are contained in the domain
 	public boolean isEmpty ( )
 	{
-		return values.isEmpty();
+		if ( length == 1 )
+			return words[base] == 0;
+
+		for ( int w = base; w < base + length; ++w )
+			if ( words[w] != 0 )
+				return false;
+
+		return true;
 	}
 
 	// Returns whether or not the domain has been modified
@@ -89,6 +145,58 @@ public class Domain implements Iterable<Integer>
 		return modified;
 	}
 
+	/**
+	 * Allocation free iteration over the domain in ascending order:
+	 *
+	 *     for ( int v = d.first(); v != 0; v = d.next( v ) )
+	 *
+	 * Returns the smallest value in the domain, or 0 if it is empty.
+	 */
+	public int first ( )
+	{
+		return next( 0 );
+	}
+
+	// Returns the smallest value greater than value, or 0 if there is none
+	public int next ( int value )
+	{
+		if ( value < 0 )
+			value = 0;
+
+		if ( length == 1 )
+		{
+			long rest = value < WORD_BITS ? words[base] & ( -1L << value ) : 0;
+			return rest == 0 ? 0 : Long.numberOfTrailingZeros( rest ) + 1;
+		}
+
+		int w = value / WORD_BITS;
+		if ( w >= length )
+			return 0;
+
+		long rest = words[base + w] & ( -1L << ( value % WORD_BITS ) );
+		while ( rest == 0 )
+		{
+			if ( ++w == length )
+				return 0;
+
+			rest = words[base + w];
+		}
+
+		return w * WORD_BITS + Long.numberOfTrailingZeros( rest ) + 1;
+	}
+
+	// Number of 64 bit words backing the domain
+	public int wordCount ( )
+	{
+		return length;
+	}
+
+	// Returns word w of the bitmask, bit i of word w is value 64*w+i+1
+	public long getWord ( int w )
+	{
+		return words[base + w];
+	}
+
 	// =================================================================
 	// Modifiers
 	// =================================================================
@@ -96,29 +204,78 @@ public class Domain implements Iterable<Integer>
 	// Adds a value to the domain
 	public void add ( int value )
 	{
-		if ( ! contains( value ) )
-			this.values.add( value );
+		int bit = value - 1;
+
+		if ( bit < 0 )
+			return;
+
+		int w = bit / WORD_BITS;
+		if ( w >= length )
+			grow( w + 1 );
+
+		words[base + w] |= 1L << bit;
 	}
 
 	// Remove a value from the domain
 	public boolean remove ( int value )
 	{
-		Integer v = value;
-
 		if ( ! contains( value ) )
 			return false;
 
 		setModified( true );
-		values.remove( v );
+
+		int bit = value - 1;
+		words[base + bit / WORD_BITS] &= ~( 1L << bit );
+
 		return true;
 	}
 
+	// Overwrites the bitmask with count words read from src at offset
+	public void setWords ( long[] src, int offset, int count )
+	{
+		if ( length == 1 && count == 1 )
+		{
+			words[base] = src[offset];
+			return;
+		}
+
+		if ( length < count )
+			grow( count );
+
+		System.arraycopy( src, offset, words, base, count );
+		for ( int w = base + count; w < base + length; ++w )
+			words[w] = 0;
+	}
+
+	// Overwrites the bitmask with the values of d
+	public void setValues ( Domain d )
+	{
+		setWords( d.words, d.base, d.length );
+	}
+
+	// Removes every value
+	public void clear ( )
+	{
+		for ( int w = base; w < base + length; ++w )
+			words[w] = 0;
+	}
+
 	// Sets the modified flag
 	public void setModified ( boolean modified )
 	{
 		this.modified = modified;
 	}
 
+	// Widens an owned domain, a view cannot hold more than its slice
+	private void grow ( int wordCount )
+	{
+		if ( view )
+			throw new IllegalArgumentException( "Value out of range of the domain" );
+
+		words = Arrays.copyOf( words, wordCount );
+		length = wordCount;
+	}
+
 	// =================================================================
 	// Iterator
 	// =================================================================
@@ -126,7 +283,33 @@ public class Domain implements Iterable<Integer>
 	@Override
 	public Iterator<Integer> iterator ( )
 	{
-		return values.iterator();
+		return new Iterator<Integer>()
+		{
+			private int nextValue = first();
+
+			@Override
+			public boolean hasNext ( )
+			{
+				return nextValue != 0;
+			}
+
+			@Override
+			public Integer next ( )
+			{
+				if ( nextValue == 0 )
+					throw new NoSuchElementException();
+
+				int value = nextValue;
+				nextValue = Domain.this.next( value );
+				return value;
+			}
+
+			@Override
+			public void remove ( )
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
 	}
 
 	// =================================================================
@@ -137,13 +320,12 @@ public class Domain implements Iterable<Integer>
 	{
 		StringBuilder sb = new StringBuilder("{");
 		String delim = "";
-		for (Integer i : values)
+		for ( int v = first(); v != 0; v = next( v ) )
 		{
-			sb.append(delim).append(i);
+			sb.append(delim).append(v);
 			delim = ",";
 		}
 		sb.append("}");
 		return sb.toString();
 	}
 }
-
@@ -0,0 +1,10 @@
+/**
+ * Receives a callback whenever the domain of a Variable changes size,
+ * including the restores done by Trail.undo.
+ */
+
+public interface DomainListener
+{
+	// Called after the domain of v went from oldSize values to v.size()
+	void domainChanged ( Variable v, int oldSize );
+}
@@ -1,7 +1,17 @@
 import java.io.FileWriter;
 import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Main driver file, which is responsible for interfacing with the
@@ -10,47 +20,147 @@ import java.io.IOException;
 
 public class Main
 {
+	// Backtracks allowed in the first restart run, 0 when restarts are off
+	private static int restartBase = 0;
+
+	// Time limit of every solve in milliseconds, 0 for none
+	private static long timeoutMillis = 0;
+
+	// Attached to every solver created by createSolver, null when off
+	private static SolveMetrics metrics;
+
+	// Receives the solutions found, null when they are not saved
+	private static PackedBoardWriter solutions;
+
+	// Answers repeated puzzles, and their variants, null when off
+	private static SolutionCache cache;
+
+	// Prints the outcome of every board of a batch, null for the default
+	// output of a "Running board" line per board
+	private static SolutionWriter output;
+
 	public static void main ( String[] args )
 	{
 		// Important Variables
 		String file   = "";
-		String var_sh = "";
-		String val_sh = "";
-		String cc     = "";
+		String[] heuristics = { "", "", "" };
+		int threads   = 0;
+		int forkDepth = 0;
+		boolean portfolio = false;
+		boolean stream = false;
+		int metricsPeriod = 0;
+		String pack = null, save = null;
+
+		// Settings of the BENCH command
+		boolean bench = false;
+		List<String> heuristicTokens = new ArrayList<String>();
+		int warmup = 1, trials = 5;
+		long limit = 10000;
+		String csv = null, json = null, baseline = null;
+		double tolerance = 10;
 
 		for ( int i = 0; i < args.length; ++i )
 		{
 			String token = args[i];
 
-			if ( token.equals( "MRV" ) )
-				var_sh = "MinimumRemainingValue";
+			if ( applyHeuristicToken( token, heuristics ) )
+			{
+				heuristicTokens.add( token );
+				continue;
+			}
+
+			if ( token.equals( "PAR" ) )
+				threads = Runtime.getRuntime().availableProcessors();
 
-			else if ( token.equals( "DEG" ) )
-				var_sh = "Degree";
+			else if ( token.startsWith( "PAR=" ) )
+				threads = Integer.parseInt( token.substring( 4 ) );
 
-			else if ( token.equals( "MAD" ) )
-				var_sh = "MRVwithTieBreaker";
+			else if ( token.equals( "FORK" ) )
+				forkDepth = 2;
 
-			else if ( token.equals( "LCV" ) )
-				val_sh = "LeastConstrainingValue";
+			else if ( token.startsWith( "FORK=" ) )
+				forkDepth = Integer.parseInt( token.substring( 5 ) );
 
-			else if ( token.equals( "FC" ) )
-				cc = "forwardChecking";
+			else if ( token.equals( "RESTART" ) )
+				restartBase = 32;
 
-			else if ( token.equals( "NOR" ) )
-				cc = "norvigCheck";
+			else if ( token.startsWith( "RESTART=" ) )
+				restartBase = Integer.parseInt( token.substring( 8 ) );
 
-			else if ( token.equals( "TOURN" ) )
-			{
-				 var_sh = "tournVar";
-				 val_sh = "tournVal";
-				 cc     = "tournCC";
-			}
+			else if ( token.equals( "PORTFOLIO" ) )
+				portfolio = true;
+
+			else if ( token.startsWith( "TIMEOUT=" ) )
+				timeoutMillis = Long.parseLong( token.substring( 8 ) );
+
+			else if ( token.equals( "METRICS" ) )
+				metricsPeriod = 5;
+
+			else if ( token.startsWith( "METRICS=" ) )
+				metricsPeriod = Integer.parseInt( token.substring( 8 ) );
+
+			else if ( token.equals( "STREAM" ) )
+				stream = true;
+
+			else if ( token.startsWith( "PACK=" ) )
+				pack = token.substring( 5 );
+
+			else if ( token.startsWith( "SAVE=" ) )
+				save = token.substring( 5 );
+
+			else if ( token.equals( "CACHE" ) )
+				cache = new SolutionCache( 10000 );
+
+			else if ( token.startsWith( "CACHE=" ) )
+				cache = new SolutionCache( Integer.parseInt( token.substring( 6 ) ) );
+
+			else if ( token.equals( "QUIET" ) )
+				output = SolutionWriter.toStandardOutput( SolutionWriter.Mode.QUIET );
+
+			else if ( token.equals( "COMPACT" ) )
+				output = SolutionWriter.toStandardOutput( SolutionWriter.Mode.COMPACT );
+
+			else if ( token.equals( "PRETTY" ) )
+				output = SolutionWriter.toStandardOutput( SolutionWriter.Mode.PRETTY );
+
+			else if ( token.equals( "BENCH" ) )
+				bench = true;
+
+			else if ( token.startsWith( "WARMUP=" ) )
+				warmup = Integer.parseInt( token.substring( 7 ) );
+
+			else if ( token.startsWith( "TRIALS=" ) )
+				trials = Integer.parseInt( token.substring( 7 ) );
+
+			else if ( token.startsWith( "LIMIT=" ) )
+				limit = Long.parseLong( token.substring( 6 ) );
+
+			else if ( token.startsWith( "CSV=" ) )
+				csv = token.substring( 4 );
+
+			else if ( token.startsWith( "JSON=" ) )
+				json = token.substring( 5 );
+
+			else if ( token.startsWith( "BASELINE=" ) )
+				baseline = token.substring( 9 );
+
+			else if ( token.startsWith( "TOLERANCE=" ) )
+				tolerance = Double.parseDouble( token.substring( 10 ) );
 
 			else
 				file = token;
 		}
 
+		String val_sh = heuristics[0];
+		String var_sh = heuristics[1];
+		String cc     = heuristics[2];
+
+		if ( metricsPeriod > 0 )
+			startMetrics( metricsPeriod );
+
+		if ( save != null && ! startSaving( new File( save ) ) )
+			return;
+
 		Trail trail = new Trail();
 
 		if ( file == "" )
@@ -58,18 +168,18 @@ public class Main
 			SudokuBoard board = new SudokuBoard( 3, 3, 7 );
 			System.out.println( board.toString() );
 
-			BTSolver solver = new BTSolver( board, trail, val_sh, var_sh, cc );
-			solver.solve();
+			BTSolver solver = createSolver( board, trail, val_sh, var_sh, cc );
+			solver.solve( createBudget() );
 
 			if ( solver.hasSolution() )
 			{
 				System.out.println( solver.getSolution().toString() );
-				System.out.println( "Trail Pushes: " + trail.getPushCount() );
-				System.out.println( "Backtracks: " + trail.getUndoCount() );
+				System.out.println( solver.getStats().toString() );
+				saveSolution( solver.getSolution() );
 			}
 			else
 			{
-				System.out.println( "Failed to find a solution" );
+				System.out.println( failureMessage( solver ) );
 			}
 
 			return;
@@ -79,6 +189,12 @@ public class Main
 		File location = new File ( file );
 		Boolean folder = location.isDirectory();
 
+		if ( pack != null )
+		{
+			packBoards( location, stream, new File( pack ) );
+			return;
+		}
+
 		if ( folder )
 		{
 			File[] listOfBoards = location.listFiles();
@@ -89,43 +205,676 @@ public class Main
 				return;
 			}
 
-			int numSolutions = 0;
+			if ( portfolio )
+			{
+				solveWithPortfolio( listOfBoards );
+				return;
+			}
+
+			if ( bench )
+			{
+				BenchRunner runner = new BenchRunner( warmup, trials, limit );
+				runner.setOutput( csv, json );
+				runner.setBaseline( baseline, tolerance / 100 );
+
+				try
+				{
+					if ( runner.run( listOfBoards, BenchRunner.combinations( heuristicTokens ) ) > 0 )
+						System.exit( 1 );
+				}
+				catch ( IOException e )
+				{
+					System.out.println( "[ERROR] " + e.getMessage() );
+					System.exit( 2 );
+				}
+				return;
+			}
+
+			if ( threads > 1 )
+			{
+				solveInParallel( listOfBoards, threads, val_sh, var_sh, cc );
+				return;
+			}
+
+			SolveStats total = new SolveStats();
 			for ( int i = 0; i < listOfBoards.length; ++i )
 			{
-				System.out.println ( "Running board: " + listOfBoards[i] );
+				if ( output == null )
+					System.out.println ( "Running board: " + listOfBoards[i] );
 
-				SudokuBoard board = new SudokuBoard( listOfBoards[i] );
+				SudokuBoard board = loadBoard( listOfBoards[i] );
+				if ( board == null )
+					continue;
 
-				BTSolver solver = new BTSolver( board, trail, val_sh, var_sh, cc );
-				solver.solve();
+				BTSolver solver = createSolver( board, new Trail(), val_sh, var_sh, cc );
+				solver.solve( createBudget() );
+				total.add( solver.getStats() );
 
-				if ( solver.hasSolution() )
-					numSolutions++;
+				if ( output == null && solver.getResult() == SolveResult.TIMEOUT )
+					System.out.println ( failureMessage( solver ) );
 
-				trail.clear();
+				SudokuBoard solution = solver.hasSolution() ? solver.getSolution() : null;
+				saveSolution( solution );
+				printResult( listOfBoards[i].getName(), solution, failureMessage( solver ) );
 			}
 
-			System.out.println( "Solutions Found: " + numSolutions );
-			System.out.println( "Trail Pushes: " + trail.getPushCount() );
-			System.out.println( "Backtracks: "  + trail.getUndoCount() );
+			flushOutput();
+			System.out.println( "Solutions Found: " + total.getSolutions() );
+			System.out.println( total.toString() );
+			printCacheStats();
+			return;
+		}
+
+		if ( stream || PackedBoardReader.isPacked( location ) )
+		{
+			solveStream( location, val_sh, var_sh, cc );
 			return;
 		}
 
-		SudokuBoard board = new SudokuBoard( location );
+		SudokuBoard board = loadBoard( location );
+		if ( board == null )
+			return;
+
 		System.out.println( board.toString() );
 
-		BTSolver solver = new BTSolver( board, trail, val_sh, var_sh, cc );
-		solver.solve();
+		if ( portfolio )
+		{
+			PortfolioSolver solver = new PortfolioSolver();
+			SolveStats stats = solver.solve( board, createBudget() );
+			solver.shutdown();
+
+			if ( solver.hasSolution() )
+			{
+				System.out.println( solver.getSolution().toString() );
+				System.out.println( "Solved by: " + solver.getWinner() );
+				System.out.println( stats.toString() );
+				saveSolution( solver.getSolution() );
+			}
+			else
+			{
+				System.out.println( failureMessage( solver.getResult() ) );
+			}
+
+			return;
+		}
+
+		if ( forkDepth > 0 )
+		{
+			int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+			ParallelSolver solver = new ParallelSolver( board, val_sh, var_sh, cc, forkDepth, poolSize );
+			solver.setSolverListener( metrics );
+			solver.setSolutionCache( cache );
+			SolveStats stats = solver.solve( createBudget() );
+
+			if ( solver.hasSolution() )
+			{
+				System.out.println( solver.getSolution().toString() );
+				System.out.println( stats.toString() );
+				saveSolution( solver.getSolution() );
+			}
+			else
+			{
+				System.out.println( failureMessage( solver.getResult() ) );
+			}
+
+			return;
+		}
+
+		BTSolver solver = createSolver( board, trail, val_sh, var_sh, cc );
+		solver.solve( createBudget() );
 
 		if ( solver.hasSolution() )
 		{
 			System.out.println( solver.getSolution().toString() );
-			System.out.println( "Trail Pushes: " + trail.getPushCount() );
-			System.out.println( "Backtracks: " + trail.getUndoCount() );
+			System.out.println( solver.getStats().toString() );
+			saveSolution( solver.getSolution() );
+		}
+		else
+		{
+			System.out.println( failureMessage( solver ) );
+		}
+	}
+
+	/**
+	 * Applies a heuristic token of the command line to heuristics, which
+	 * holds the value heuristic, variable heuristic and consistency check
+	 * in the order BTSolver takes them.
+	 *
+	 * Return: false if token is not a heuristic token
+	 */
+	static boolean applyHeuristicToken ( String token, String[] heuristics )
+	{
+		if ( token.equals( "MRV" ) )
+			heuristics[1] = "MinimumRemainingValue";
+
+		else if ( token.equals( "DEG" ) )
+			heuristics[1] = "Degree";
+
+		else if ( token.equals( "MAD" ) )
+			heuristics[1] = "MRVwithTieBreaker";
+
+		else if ( token.equals( "LCV" ) )
+			heuristics[0] = "LeastConstrainingValue";
+
+		else if ( token.equals( "FC" ) )
+			heuristics[2] = "forwardChecking";
+
+		else if ( token.equals( "NOR" ) )
+			heuristics[2] = "norvigCheck";
+
+		else if ( token.equals( "AC3" ) )
+			heuristics[2] = "arcConsistency";
+
+		else if ( token.equals( "ALLDIFF" ) )
+			heuristics[2] = "allDifferent";
+
+		else if ( token.equals( "HALL" ) )
+			heuristics[2] = "hallSets";
+
+		else if ( token.equals( "TOURN" ) )
+		{
+			heuristics[0] = "tournVal";
+			heuristics[1] = "tournVar";
+			heuristics[2] = "tournCC";
 		}
+
 		else
+			return false;
+
+		return true;
+	}
+
+	/**
+	 * Attaches metrics to every solver: they are exported over JMX,
+	 * printed every period seconds while solving, and printed with the
+	 * depth histogram when the program ends.
+	 */
+	private static void startMetrics ( int period )
+	{
+		metrics = new SolveMetrics();
+		metrics.registerMBean( "Main" );
+		metrics.startLogging( period * 1000L, System.out );
+
+		Runtime.getRuntime().addShutdownHook( new Thread()
+		{
+			@Override
+			public void run ( )
+			{
+				metrics.stopLogging();
+				System.out.println( "Metrics: " + metrics.report() );
+			}
+		} );
+	}
+
+	/**
+	 * Solves the puzzles of a file with one puzzle per line, or of a
+	 * packed board file, while they are read, so memory stays bounded
+	 * whatever the size of the file. Only the puzzles without a solution
+	 * are printed.
+	 */
+	private static void solveStream ( File file, String val_sh, String var_sh, String cc )
+	{
+		SolveStats total = new SolveStats();
+		PuzzleStream puzzles = null;
+		PackedBoardReader packed = null;
+
+		try
+		{
+			Iterable<SudokuBoard> boards;
+			if ( PackedBoardReader.isPacked( file ) )
+				boards = packed = new PackedBoardReader( file );
+			else
+				boards = puzzles = new PuzzleStream( file );
+
+			Iterator<SudokuBoard> it = boards.iterator();
+			SudokuBoard board;
+			while ( ( board = nextBoard( it, file ) ) != null )
+			{
+				BTSolver solver = createSolver( board, new Trail(), val_sh, var_sh, cc );
+				solver.solve( createBudget() );
+				total.add( solver.getStats() );
+
+				String label = puzzles != null ? "Line " + puzzles.getLineNumber() : "Board " + packed.getPosition();
+				SudokuBoard solution = solver.hasSolution() ? solver.getSolution() : null;
+				saveSolution( solution );
+
+				if ( output != null )
+					printResult( label, solution, failureMessage( solver ) );
+				else if ( solution == null )
+					System.out.println( label + ": " + failureMessage( solver ) );
+			}
+		}
+		catch ( IOException e )
+		{
+			System.out.println( "[ERROR] Failed to read " + file + ": " + e.getMessage() );
+		}
+		catch ( IllegalArgumentException e )
+		{
+			System.out.println( "[ERROR] " + file + ": " + e.getMessage() );
+		}
+		finally
+		{
+			try
+			{
+				if ( puzzles != null )
+					puzzles.close();
+
+				if ( packed != null )
+					packed.close();
+			}
+			catch ( IOException e )
+			{
+			}
+		}
+
+		flushOutput();
+		System.out.println( "Puzzles: " + total.getBoards() );
+		System.out.println( "Solutions Found: " + total.getSolutions() );
+		System.out.println( total.toString() );
+		printCacheStats();
+	}
+
+	// Next board of a stream, null at its end. Malformed lines and corrupt
+	// packed records are reported and skipped, a read error is reported
+	// and ends the stream.
+	private static SudokuBoard nextBoard ( Iterator<SudokuBoard> it, File file )
+	{
+		while ( true )
+		{
+			try
+			{
+				return it.hasNext() ? it.next() : null;
+			}
+			catch ( IllegalArgumentException e )
+			{
+				flushOutput();
+				System.out.println( "[ERROR] " + file + ": " + e.getMessage() );
+			}
+			catch ( IllegalStateException e )
+			{
+				// The iterators wrap their IOExceptions
+				Throwable cause = e.getCause() != null ? e.getCause() : e;
+				flushOutput();
+				System.out.println( "[ERROR] Failed to read " + file + ": " + cause.getMessage() );
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Writes the boards of location to a packed board file: every board
+	 * file of a directory, the puzzles of a STREAM or packed file, or a
+	 * single board file.
+	 */
+	private static void packBoards ( File location, boolean stream, File target )
+	{
+		PackedBoardWriter writer = null;
+		Closeable source = null;
+
+		try
+		{
+			writer = new PackedBoardWriter( target );
+
+			if ( location.isDirectory() )
+			{
+				File[] files = location.listFiles();
+				if ( files == null )
+					throw new IOException( "Failed to open directory" );
+
+				Arrays.sort( files );
+				for ( File f : files )
+				{
+					SudokuBoard board = f.isFile() ? loadBoard( f ) : null;
+					if ( board != null )
+						writer.add( board );
+				}
+			}
+			else if ( stream || PackedBoardReader.isPacked( location ) )
+			{
+				Iterable<SudokuBoard> boards;
+				if ( stream )
+				{
+					PuzzleStream puzzles = new PuzzleStream( location );
+					source = puzzles;
+					boards = puzzles;
+				}
+				else
+				{
+					PackedBoardReader packed = new PackedBoardReader( location );
+					source = packed;
+					boards = packed;
+				}
+
+				Iterator<SudokuBoard> it = boards.iterator();
+				SudokuBoard board;
+				while ( ( board = nextBoard( it, location ) ) != null )
+					writer.add( board );
+			}
+			else
+			{
+				SudokuBoard board = loadBoard( location );
+				if ( board != null )
+					writer.add( board );
+			}
+
+			writer.close();
+			System.out.println( "Packed " + writer.getCount() + " boards into " + target
+			                    + " (" + target.length() + " bytes)" );
+		}
+		catch ( IOException e )
+		{
+			System.out.println( "[ERROR] " + location + ": " + e.getMessage() );
+		}
+		catch ( IllegalArgumentException e )
+		{
+			System.out.println( "[ERROR] " + location + ": " + e.getMessage() );
+		}
+		finally
+		{
+			try
+			{
+				if ( source != null )
+					source.close();
+
+				if ( writer != null )
+					writer.close();
+			}
+			catch ( IOException e )
+			{
+			}
+		}
+	}
+
+	/**
+	 * Opens the packed board file the solutions are saved to. It is
+	 * closed, writing its index, when the program ends.
+	 *
+	 * Return: false if the file cannot be created
+	 */
+	private static boolean startSaving ( File file )
+	{
+		try
+		{
+			solutions = new PackedBoardWriter( file );
+		}
+		catch ( IOException e )
+		{
+			System.out.println( "[ERROR] Failed to create " + file + ": " + e.getMessage() );
+			return false;
+		}
+
+		Runtime.getRuntime().addShutdownHook( new Thread()
+		{
+			@Override
+			public void run ( )
+			{
+				try
+				{
+					solutions.close();
+				}
+				catch ( IOException e )
+				{
+					System.out.println( "[ERROR] Failed to save solutions: " + e.getMessage() );
+				}
+			}
+		} );
+
+		return true;
+	}
+
+	// Appends a solution to the SAVE file, if one was given
+	private static void saveSolution ( SudokuBoard solution )
+	{
+		if ( solutions == null || solution == null )
+			return;
+
+		try
+		{
+			solutions.add( solution );
+		}
+		catch ( IOException e )
+		{
+			System.out.println( "[ERROR] Failed to save solution: " + e.getMessage() );
+		}
+	}
+
+	// Races the portfolio configurations on every board
+	private static void solveWithPortfolio ( File[] listOfBoards )
+	{
+		PortfolioSolver solver = new PortfolioSolver();
+		SolveStats total = new SolveStats();
+
+		try
+		{
+			for ( int i = 0; i < listOfBoards.length; ++i )
+			{
+				if ( output == null )
+					System.out.println ( "Running board: " + listOfBoards[i] );
+
+				SudokuBoard board = loadBoard( listOfBoards[i] );
+				if ( board == null )
+					continue;
+
+				SolveStats stats = solver.solve( board, createBudget() );
+				if ( stats != null )
+					total.add( stats );
+
+				SudokuBoard solution = solver.hasSolution() ? solver.getSolution() : null;
+				saveSolution( solution );
+				printResult( listOfBoards[i].getName(), solution, failureMessage( solver.getResult() ) );
+			}
+		}
+		finally
 		{
-			System.out.println( "Failed to find a solution" );
+			solver.shutdown();
 		}
+
+		flushOutput();
+		System.out.println( "Solutions Found: " + total.getSolutions() );
+		System.out.println( total.toString() );
+		System.out.println( solver.toString() );
+	}
+
+	/**
+	 * Solves every board on a pool of threads, each task with its own
+	 * BTSolver and Trail. Results are printed and added up in the order
+	 * of the input.
+	 */
+	private static void solveInParallel ( File[] listOfBoards, int threads,
+	                                      final String val_sh, final String var_sh, final String cc )
+	{
+		ExecutorService executor = Executors.newFixedThreadPool( threads );
+		List<Future<SolveStats>> results = new ArrayList<Future<SolveStats>>();
+
+		// Solutions kept for printing and saving, read after Future.get()
+		final boolean keep = output != null || solutions != null;
+		final SudokuBoard[] solved = new SudokuBoard[listOfBoards.length];
+
+		for ( int i = 0; i < listOfBoards.length; ++i )
+		{
+			final File boardFile = listOfBoards[i];
+			final int index = i;
+
+			results.add( executor.submit( new Callable<SolveStats>()
+			{
+				@Override
+				public SolveStats call ( )
+				{
+					SudokuBoard board = new SudokuBoard( boardFile );
+					BTSolver solver = createSolver( board, new Trail(), val_sh, var_sh, cc );
+					solver.solve( createBudget() );
+
+					if ( keep && solver.hasSolution() )
+						solved[index] = solver.getSolution();
+
+					return solver.getStats();
+				}
+			} ) );
+		}
+
+		SolveStats total = new SolveStats();
+		long startTime = System.nanoTime();
+
+		try
+		{
+			for ( int i = 0; i < listOfBoards.length; ++i )
+			{
+				if ( output == null )
+					System.out.println ( "Running board: " + listOfBoards[i] );
+
+				try
+				{
+					SolveStats stats = results.get( i ).get();
+					total.add( stats );
+
+					saveSolution( solved[i] );
+					printResult( listOfBoards[i].getName(), solved[i],
+					             stats.getTimeouts() > 0 ? "Timed out after " + timeoutMillis + " ms"
+					                                     : "Failed to find a solution" );
+					solved[i] = null;
+				}
+				catch ( ExecutionException e )
+				{
+					flushOutput();
+
+					// A board that failed to load is reported like loadBoard does
+					if ( e.getCause() instanceof IllegalArgumentException )
+						System.out.println( "[ERROR] " + listOfBoards[i] + ": " + e.getCause().getMessage() );
+					else
+						System.out.println( "[ERROR] Failed to solve " + listOfBoards[i] + ": " + e.getCause() );
+				}
+			}
+		}
+		catch ( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+
+		flushOutput();
+		System.out.println( "Solutions Found: " + total.getSolutions() );
+		System.out.println( total.toString() );
+		printCacheStats();
+		System.out.println( "Elapsed (ms): " + ( System.nanoTime() - startTime ) / 1000000 + " on " + threads + " threads" );
+	}
+
+	// Reads a board file, prints the error and returns null if it is malformed
+	private static SudokuBoard loadBoard ( File file )
+	{
+		try
+		{
+			return new SudokuBoard( file );
+		}
+		catch ( IllegalArgumentException e )
+		{
+			flushOutput();
+			System.out.println( "[ERROR] " + file + ": " + e.getMessage() );
+			return null;
+		}
+	}
+
+	/**
+	 * Prints the outcome of a board of a batch in the output mode: the
+	 * solution, or failure when solution is null. Does nothing without
+	 * an output mode.
+	 */
+	private static void printResult ( String label, SudokuBoard solution, String failure )
+	{
+		if ( output == null )
+			return;
+
+		try
+		{
+			if ( solution != null )
+				output.write( label, solution );
+			else
+				output.message( label, failure );
+		}
+		catch ( IOException e )
+		{
+			System.err.println( "[ERROR] Failed to write output: " + e.getMessage() );
+			output = null;
+		}
+	}
+
+	// Writes out what the output mode buffered, before printing to System.out
+	private static void flushOutput ( )
+	{
+		if ( output == null )
+			return;
+
+		try
+		{
+			output.flush();
+		}
+		catch ( IOException e )
+		{
+			System.err.println( "[ERROR] Failed to write output: " + e.getMessage() );
+			output = null;
+		}
+	}
+
+	// A budget with the time limit of the command line
+	private static SolveBudget createBudget ( )
+	{
+		return new SolveBudget().setTimeout( timeoutMillis );
+	}
+
+	private static String failureMessage ( BTSolver solver )
+	{
+		return failureMessage( solver.getResult() );
+	}
+
+	private static String failureMessage ( SolveResult result )
+	{
+		if ( result == SolveResult.TIMEOUT )
+			return "Timed out after " + timeoutMillis + " ms";
+
+		return "Failed to find a solution";
+	}
+
+	// Creates a solver with the restart setting, metrics and cache of the command line
+	static BTSolver createSolver ( SudokuBoard board, Trail trail, String val_sh, String var_sh, String cc )
+	{
+		BTSolver solver = createPlainSolver( board, trail, val_sh, var_sh, cc );
+
+		if ( metrics != null )
+			solver.setSolverListener( metrics );
+
+		if ( cache != null )
+			solver.setSolutionCache( cache );
+
+		return solver;
+	}
+
+	/**
+	 * Creates a solver with only the restart setting of the command line,
+	 * for BENCH, whose timings must not come from the cache or include
+	 * the cost of the metrics.
+	 */
+	static BTSolver createPlainSolver ( SudokuBoard board, Trail trail, String val_sh, String var_sh, String cc )
+	{
+		return createPlainSolver( new ConstraintNetwork( board ), board, trail, val_sh, var_sh, cc );
+	}
+
+	// Same for an existing network, the subtrees of FORK
+	static BTSolver createPlainSolver ( ConstraintNetwork network, SudokuBoard board, Trail trail,
+	                                    String val_sh, String var_sh, String cc )
+	{
+		BTSolver solver = new BTSolver( network, board, trail, val_sh, var_sh, cc );
+
+		if ( restartBase > 0 )
+			solver.setRestarts( restartBase, 1 );
+
+		return solver;
+	}
+
+	private static void printCacheStats ( )
+	{
+		if ( cache != null )
+			System.out.println( cache.toString() );
 	}
-}
\ No newline at end of file
+}
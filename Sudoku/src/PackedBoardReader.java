@@ -0,0 +1,228 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a file written by PackedBoardWriter. The index is loaded when the
+ * file is opened, so any board can be read with get(i) in one seek and
+ * one read. A corrupt record throws an IllegalArgumentException, and the
+ * other records can still be read. A reader is not safe for use by
+ * several threads.
+ */
+
+public class PackedBoardReader implements Iterable<SudokuBoard>, Closeable
+{
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	private RandomAccessFile file;
+	private long[] offsets;     // record offsets, then the index offset
+	private byte[] record = new byte[0];
+	private int position = -1;  // board last read by the iterator
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	public PackedBoardReader ( File file ) throws IOException
+	{
+		this.file = new RandomAccessFile( file, "r" );
+
+		try
+		{
+			readIndex( file );
+		}
+		catch ( IOException e )
+		{
+			this.file.close();
+			throw e;
+		}
+	}
+
+	private void readIndex ( File name ) throws IOException
+	{
+		long size = file.length();
+		if ( size < PackedBoardWriter.HEADER_SIZE + PackedBoardWriter.TRAILER_SIZE
+		     || file.readInt() != PackedBoardWriter.MAGIC )
+			throw new IOException( name + " is not a packed board file" );
+
+		int version = file.readInt() >>> 24;
+		if ( version != PackedBoardWriter.VERSION )
+			throw new IOException( name + " has unsupported version " + version );
+
+		file.seek( size - PackedBoardWriter.TRAILER_SIZE );
+		long indexOffset = file.readLong();
+		int count = file.readInt();
+		if ( file.readInt() != PackedBoardWriter.MAGIC || count < 0
+		     || indexOffset + 8L * count != size - PackedBoardWriter.TRAILER_SIZE )
+			throw new IOException( name + " is truncated or has no index" );
+
+		byte[] index = new byte[8 * count];
+		file.seek( indexOffset );
+		file.readFully( index );
+
+		offsets = new long[count + 1];
+		for ( int i = 0; i < count; ++i )
+		{
+			long v = 0;
+			for ( int b = 0; b < 8; ++b )
+				v = ( v << 8 ) | ( index[8 * i + b] & 0xFF );
+			offsets[i] = v;
+		}
+		offsets[count] = indexOffset;
+	}
+
+	// Whether file starts like a packed board file
+	public static boolean isPacked ( File file )
+	{
+		if ( ! file.isFile() )
+			return false;
+
+		try
+		{
+			RandomAccessFile in = new RandomAccessFile( file, "r" );
+			try
+			{
+				return in.length() >= 4 && in.readInt() == PackedBoardWriter.MAGIC;
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		catch ( IOException e )
+		{
+			return false;
+		}
+	}
+
+	// =================================================================
+	// Accessors
+	// =================================================================
+
+	// Number of boards in the file
+	public int size ( )
+	{
+		return offsets.length - 1;
+	}
+
+	// Index of the board the iterator read last, corrupt or not, -1 before the first
+	public int getPosition ( )
+	{
+		return position;
+	}
+
+	// Reads board i, counting from 0
+	public SudokuBoard get ( int i ) throws IOException
+	{
+		if ( i < 0 || i >= size() )
+			throw new IndexOutOfBoundsException( "Board " + i + " of " + size() );
+
+		long length = offsets[i + 1] - offsets[i];
+		if ( length < 2 || length > Integer.MAX_VALUE || offsets[i] < PackedBoardWriter.HEADER_SIZE )
+			throw new IllegalArgumentException( "Board " + i + " is corrupt: its index entry is invalid" );
+
+		if ( record.length < length )
+			record = new byte[(int) length];
+
+		file.seek( offsets[i] );
+		file.readFully( record, 0, (int) length );
+
+		int p = record[0] & 0xFF;
+		int q = record[1] & 0xFF;
+		int n = p * q;
+		if ( n == 0 || length != PackedBoardWriter.recordLength( n ) )
+			throw new IllegalArgumentException( "Board " + i + " is corrupt: " + length + " bytes for " + p + "x" + q + " blocks" );
+
+		return new SudokuBoard( p, q, unpack( record, 2, n, i ) );
+	}
+
+	/**
+	 * Reads the boards in order. A corrupt record throws from next(),
+	 * after which iteration goes on with the following record. I/O errors
+	 * throw an IllegalStateException wrapping the IOException.
+	 */
+	@Override
+	public Iterator<SudokuBoard> iterator ( )
+	{
+		return new Iterator<SudokuBoard>()
+		{
+			private int next = 0;
+
+			@Override
+			public boolean hasNext ( )
+			{
+				return next < size();
+			}
+
+			@Override
+			public SudokuBoard next ( )
+			{
+				if ( ! hasNext() )
+					throw new NoSuchElementException();
+
+				try
+				{
+					position = next++;
+					return get( position );
+				}
+				catch ( IOException e )
+				{
+					throw new IllegalStateException( e );
+				}
+			}
+
+			@Override
+			public void remove ( )
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public void close ( ) throws IOException
+	{
+		file.close();
+	}
+
+	// =================================================================
+	// Decoding
+	// =================================================================
+
+	// Unpacks the n*n cells of board index, bitsPerCell(n) bits each, from in at offset
+	private static int[][] unpack ( byte[] in, int offset, int n, int index )
+	{
+		int bits = PackedBoardWriter.bitsPerCell( n );
+		int mask = ( 1 << bits ) - 1;
+		int[][] board = new int[n][n];
+		long acc = 0;
+		int accBits = 0;
+
+		for ( int i = 0; i < n; ++i )
+		{
+			for ( int j = 0; j < n; ++j )
+			{
+				while ( accBits < bits )
+				{
+					acc = ( acc << 8 ) | ( in[offset++] & 0xFF );
+					accBits += 8;
+				}
+
+				accBits -= bits;
+				int value = (int) ( acc >>> accBits ) & mask;
+				if ( value > n )
+					throw new IllegalArgumentException( "Board " + index + " is corrupt: cell value " + value
+					                                    + " is larger than " + n );
+
+				board[i][j] = value;
+			}
+		}
+
+		return board;
+	}
+}
@@ -0,0 +1,159 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Writes boards to a packed binary file, read back by PackedBoardReader.
+ *
+ * Layout, big endian:
+ *
+ *   header   "SDKB", version byte, 3 zero bytes
+ *   records  per board: p and q as unsigned bytes, then the N*N cells in
+ *            row major order at bitsPerCell(N) bits each, most significant
+ *            bit first, padded to a whole byte
+ *   index    the file offset of every record as a long
+ *   trailer  index offset as a long, board count as an int, "SDKB"
+ *
+ * A 9x9 board takes 43 bytes plus 8 of index, against about 170 as text.
+ * The index is written by close(), boards can be added until then.
+ */
+
+public class PackedBoardWriter implements Closeable
+{
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	static final int MAGIC = 0x53444B42;   // "SDKB"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 8;
+	static final int TRAILER_SIZE = 16;
+
+	private DataOutputStream out;
+	private long offset;
+	private long[] index = new long[64];
+	private int count;
+	private byte[] record = new byte[0];
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	public PackedBoardWriter ( File file ) throws IOException
+	{
+		out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ), 1 << 16 ) );
+		out.writeInt( MAGIC );
+		out.writeInt( VERSION << 24 );
+		offset = HEADER_SIZE;
+	}
+
+	// =================================================================
+	// Accessors
+	// =================================================================
+
+	// Boards written so far
+	public synchronized int getCount ( )
+	{
+		return count;
+	}
+
+	// Bits per cell for values 0 to n, ceil(log2(n+1))
+	static int bitsPerCell ( int n )
+	{
+		return 32 - Integer.numberOfLeadingZeros( n );
+	}
+
+	// Bytes of the record of an N x N board, p and q included
+	static int recordLength ( int n )
+	{
+		return 2 + (int) ( ( (long) n * n * bitsPerCell( n ) + 7 ) / 8 );
+	}
+
+	// =================================================================
+	// Writing
+	// =================================================================
+
+	/**
+	 * Appends board to the file. Throws an IllegalArgumentException when
+	 * p or q is larger than 255.
+	 */
+	public synchronized void add ( SudokuBoard board ) throws IOException
+	{
+		if ( out == null )
+			throw new IOException( "Writer is closed" );
+
+		int p = board.getP();
+		int q = board.getQ();
+		if ( p > 255 || q > 255 )
+			throw new IllegalArgumentException( "Block size " + p + "x" + q + " cannot be packed" );
+
+		int n = p * q;
+		int length = recordLength( n );
+		if ( record.length < length )
+			record = new byte[length];
+
+		record[0] = (byte) p;
+		record[1] = (byte) q;
+		pack( board.getBoard(), n, record, 2 );
+		out.write( record, 0, length );
+
+		if ( count == index.length )
+			index = Arrays.copyOf( index, count * 2 );
+
+		index[count++] = offset;
+		offset += length;
+	}
+
+	// Writes the index and the trailer and closes the file
+	@Override
+	public synchronized void close ( ) throws IOException
+	{
+		if ( out == null )
+			return;
+
+		try
+		{
+			for ( int i = 0; i < count; ++i )
+				out.writeLong( index[i] );
+
+			out.writeLong( offset );
+			out.writeInt( count );
+			out.writeInt( MAGIC );
+		}
+		finally
+		{
+			out.close();
+			out = null;
+		}
+	}
+
+	// Packs the cells of board at bitsPerCell(n) bits into out from offset
+	private static void pack ( int[][] board, int n, byte[] out, int offset )
+	{
+		int bits = bitsPerCell( n );
+		long acc = 0;
+		int accBits = 0;
+
+		for ( int i = 0; i < n; ++i )
+		{
+			for ( int j = 0; j < n; ++j )
+			{
+				acc = ( acc << bits ) | board[i][j];
+				accBits += bits;
+
+				while ( accBits >= 8 )
+				{
+					accBits -= 8;
+					out[offset++] = (byte) ( acc >>> accBits );
+				}
+			}
+		}
+
+		if ( accBits > 0 )
+			out[offset] = (byte) ( acc << ( 8 - accBits ) );
+	}
+}
@@ -0,0 +1,303 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Solves a single board on a ForkJoinPool by splitting the search tree.
+ *
+ * Down to splitDepth, every value of the branching variable becomes a
+ * subtask with its own copy of the ConstraintNetwork and its own Trail.
+ * Below that depth each subtask runs a regular BTSolver search. The first
+ * subtask to find a solution sets a shared flag that stops all others.
+ *
+ * The time limit and cancel token of the budget apply to the whole
+ * solve, the node limit to the search of each subtask. The subtask
+ * solvers come from Main.createPlainSolver, so they restart as set on the
+ * command line, and report to the listener if one is attached. A cache
+ * is consulted once for the whole board, not by the subtasks.
+ *
+ * The listener sees the depths of the whole tree: a subtask at depth d
+ * reports its nodes d levels deeper, and the split nodes above
+ * splitDepth are reported as well, though the returned stats only count
+ * the nodes searched by the subtasks.
+ */
+
+public class ParallelSolver
+{
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	private SudokuBoard sudokuGrid;
+	private String valHeuristics;
+	private String varHeuristics;
+	private String cChecks;
+	private int splitDepth;
+	private int threads;
+
+	private AtomicBoolean solved = new AtomicBoolean( false );
+	private AtomicBoolean expired = new AtomicBoolean( false );
+	private AtomicBoolean cancelToken;
+	private long nodeLimit;
+	private long deadline;      // System.nanoTime() of the time limit, 0 for none
+	private AtomicReference<SudokuBoard> solution = new AtomicReference<SudokuBoard>();
+	private SolveStats leafStats = new SolveStats();
+	private SolverListener listener;
+	private SolutionCache cache;
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	public ParallelSolver ( SudokuBoard sboard, String val_sh, String var_sh, String cc, int splitDepth, int threads )
+	{
+		this.sudokuGrid    = sboard;
+		this.valHeuristics = val_sh;
+		this.varHeuristics = var_sh;
+		this.cChecks       = cc;
+		this.splitDepth    = splitDepth;
+		this.threads       = threads;
+	}
+
+	// =================================================================
+	// Engine Functions
+	// =================================================================
+
+	// Runs the search without limits
+	public SolveStats solve ( )
+	{
+		return solve( new SolveBudget() );
+	}
+
+	/**
+	 * Runs the search within budget. The returned stats add up the
+	 * counters of every subtask that searched, with the wall time of the
+	 * whole solve. Their result is TIMEOUT if a subtask ran out of budget
+	 * before any subtask found a solution.
+	 */
+	public SolveStats solve ( SolveBudget budget )
+	{
+		long startTime = System.nanoTime();
+		cancelToken = budget.getCancelToken();
+		nodeLimit   = budget.getNodeLimit();
+		deadline    = budget.getTimeout() > 0 ? startTime + budget.getTimeout() * 1000000L : 0;
+
+		SolutionCache.Lookup lookup = null;
+		if ( cache != null )
+		{
+			lookup = cache.lookup( sudokuGrid );
+			if ( lookup.getSolution() != null )
+			{
+				long elapsed = System.nanoTime() - startTime;
+				if ( listener != null )
+					listener.solvedFromCache( elapsed );
+
+				solution.set( lookup.getSolution() );
+				return new SolveStats( 0, 0, 0, 0, 0, 0, elapsed, SolveResult.SOLVED );
+			}
+		}
+
+		ForkJoinPool pool = new ForkJoinPool( threads );
+		try
+		{
+			pool.invoke( new SearchTask( newSolver( new ConstraintNetwork( sudokuGrid ), 0 ), 0 ) );
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+
+		if ( lookup != null && hasSolution() )
+			lookup.put( getSolution() );
+
+		synchronized ( leafStats )
+		{
+			return new SolveStats( leafStats.getPushes(), leafStats.getUndos(), leafStats.getNodes(),
+			                       leafStats.getMaxDepth(), leafStats.getPropagations(), leafStats.getRestarts(),
+			                       System.nanoTime() - startTime,
+			                       getResult() );
+		}
+	}
+
+	// Outcome of the search
+	public SolveResult getResult ( )
+	{
+		if ( hasSolution() )
+			return SolveResult.SOLVED;
+
+		return expired.get() ? SolveResult.TIMEOUT : SolveResult.UNSAT;
+	}
+
+	public boolean hasSolution ( )
+	{
+		return solution.get() != null;
+	}
+
+	public SudokuBoard getSolution ( )
+	{
+		return solution.get();
+	}
+
+	// Attaches listener to the solver of every subtask
+	public void setSolverListener ( SolverListener listener )
+	{
+		this.listener = listener;
+	}
+
+	// Answers solve() from cache when it holds a solution of a variant of the board
+	public void setSolutionCache ( SolutionCache cache )
+	{
+		this.cache = cache;
+	}
+
+	// A solver of the subtree at depth
+	private BTSolver newSolver ( ConstraintNetwork network, int depth )
+	{
+		BTSolver solver = Main.createPlainSolver( network, sudokuGrid, new Trail(), valHeuristics, varHeuristics, cChecks );
+		solver.setStopFlag( solved );
+
+		if ( listener != null )
+			solver.setSolverListener( depth > 0 ? new DepthListener( listener, depth ) : listener );
+
+		return solver;
+	}
+
+	/**
+	 * The budget left for a subtask, or null once the time is up or the
+	 * solve was cancelled, which marks the search as expired.
+	 */
+	private SolveBudget remainingBudget ( )
+	{
+		long left = deadline > 0 ? deadline - System.nanoTime() : 0;
+		if ( cancelToken.get() || ( deadline > 0 && left <= 0 ) )
+		{
+			expired.set( true );
+			return null;
+		}
+
+		SolveBudget budget = new SolveBudget().setNodeLimit( nodeLimit ).setCancelToken( cancelToken );
+		if ( deadline > 0 )
+			budget.setTimeout( Math.max( 1, left / 1000000 ) );
+
+		return budget;
+	}
+
+	// =================================================================
+	// Search Task
+	// =================================================================
+
+	private class SearchTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private BTSolver solver;
+		private int depth;
+
+		SearchTask ( BTSolver solver, int depth )
+		{
+			this.solver = solver;
+			this.depth  = depth;
+		}
+
+		@Override
+		protected void compute ( )
+		{
+			if ( solved.get() )
+				return;
+
+			SolveBudget budget = remainingBudget();
+			if ( budget == null || ! solver.propagateRoot() )
+				return;
+
+			Variable v = solver.getBranchVariable();
+
+			if ( depth >= splitDepth || v == null )
+			{
+				// TIMEOUT also means stopped by a solution found elsewhere
+				if ( solver.solve( budget ) == SolveResult.TIMEOUT && ! solved.get() )
+					expired.set( true );
+
+				synchronized ( leafStats )
+				{
+					leafStats.add( solver.getStats() );
+				}
+
+				if ( solver.hasSolution() && solved.compareAndSet( false, true ) )
+					solution.set( solver.getSolution() );
+				return;
+			}
+
+			if ( listener != null )
+				listener.nodeVisited( depth );
+
+			int[] values = new int[v.size()];
+			int count = solver.getBranchValues( v, values );
+
+			List<SearchTask> subtasks = new ArrayList<SearchTask>( count );
+			for ( int k = 0; k < count; ++k )
+			{
+				ConstraintNetwork copy = new ConstraintNetwork( solver.getNetwork() );
+				copy.getVariables().get( v.getId() ).assignValue( values[k] );
+				subtasks.add( new SearchTask( newSolver( copy, depth + 1 ), depth + 1 ) );
+			}
+
+			invokeAll( subtasks );
+		}
+	}
+
+	// =================================================================
+	// Depth Listener
+	// =================================================================
+
+	// Passes the events of a subtask on, its node depths offset to the whole tree
+	private static class DepthListener implements SolverListener
+	{
+		private SolverListener listener;
+		private int offset;
+
+		DepthListener ( SolverListener listener, int offset )
+		{
+			this.listener = listener;
+			this.offset   = offset;
+		}
+
+		@Override
+		public void nodeVisited ( int depth )
+		{
+			listener.nodeVisited( depth + offset );
+		}
+
+		@Override
+		public void variableSelected ( long nanos )
+		{
+			listener.variableSelected( nanos );
+		}
+
+		@Override
+		public void valuesOrdered ( long nanos )
+		{
+			listener.valuesOrdered( nanos );
+		}
+
+		@Override
+		public void consistencyChecked ( long nanos, boolean consistent )
+		{
+			listener.consistencyChecked( nanos, consistent );
+		}
+
+		@Override
+		public void valuesPruned ( int propagator, int count )
+		{
+			listener.valuesPruned( propagator, count );
+		}
+
+		@Override
+		public void solvedFromCache ( long nanos )
+		{
+			listener.solvedFromCache( nanos );
+		}
+	}
+}
@@ -0,0 +1,197 @@
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Races several heuristic combinations on the same board, each on its
+ * own thread with its own copy of the SudokuBoard, BTSolver and Trail.
+ * The solvers come from Main.createSolver, so they use the restart,
+ * metrics and cache settings of the command line. The first
+ * configuration to solve the board, or to prove it unsolvable, decides
+ * the race and the others are stopped through a shared cancel token.
+ *
+ * The solver can be reused for many boards and keeps count of how often
+ * each configuration won.
+ */
+
+public class PortfolioSolver
+{
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	// Name, value heuristic, variable heuristic, consistency check
+	public static final String[][] DEFAULT_CONFIGURATIONS =
+	{
+		{ "MRV FC",          "",                       "MinimumRemainingValue", "forwardChecking" },
+		{ "MRV LCV FC",      "LeastConstrainingValue", "MinimumRemainingValue", "forwardChecking" },
+		{ "MAD LCV NOR",     "LeastConstrainingValue", "MRVwithTieBreaker",     "norvigCheck"     },
+		{ "MRV HALL",        "",                       "MinimumRemainingValue", "hallSets"        },
+		{ "MRV ALLDIFF",     "",                       "MinimumRemainingValue", "allDifferent"    },
+		{ "MAD LCV ALLDIFF", "LeastConstrainingValue", "MRVwithTieBreaker",     "allDifferent"    },
+	};
+
+	private String[][] configurations;
+	private int[] wins;
+	private ExecutorService executor;
+
+	private SudokuBoard solution;
+	private String winner;
+	private SolveResult result;
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	public PortfolioSolver ( )
+	{
+		this( DEFAULT_CONFIGURATIONS );
+	}
+
+	public PortfolioSolver ( String[][] configurations )
+	{
+		this.configurations = configurations;
+		this.wins = new int[configurations.length];
+		this.executor = Executors.newFixedThreadPool( configurations.length );
+	}
+
+	// =================================================================
+	// Engine Functions
+	// =================================================================
+
+	// Solves sboard without limits
+	public SolveStats solve ( SudokuBoard sboard )
+	{
+		return solve( sboard, new SolveBudget() );
+	}
+
+	/**
+	 * Solves sboard with every configuration at once, each within the
+	 * time and node limits of budget. Cancelling budget stops them all.
+	 *
+	 * Return: the stats of the configuration that decided the race, or
+	 *         of the last one to run out of budget
+	 */
+	public SolveStats solve ( SudokuBoard sboard, SolveBudget budget )
+	{
+		final AtomicBoolean stop = new AtomicBoolean( false );
+		final AtomicBoolean cancel = budget.getCancelToken();
+		final long timeout = budget.getTimeout();
+		final long nodeLimit = budget.getNodeLimit();
+		final BTSolver[] solvers = new BTSolver[configurations.length];
+		CompletionService<Integer> race = new ExecutorCompletionService<Integer>( executor );
+
+		for ( int i = 0; i < configurations.length; ++i )
+		{
+			final int index = i;
+			final SudokuBoard copy = new SudokuBoard( sboard );
+			race.submit( new Callable<Integer>()
+			{
+				@Override
+				public Integer call ( )
+				{
+					String[] config = configurations[index];
+					BTSolver solver = Main.createSolver( copy, new Trail(), config[1], config[2], config[3] );
+					solver.setStopFlag( cancel );
+					solver.solve( new SolveBudget().setTimeout( timeout ).setNodeLimit( nodeLimit ).setCancelToken( stop ) );
+					solvers[index] = solver;
+					return index;
+				}
+			} );
+		}
+
+		solution = null;
+		winner = null;
+		result = null;
+		SolveStats stats = null;
+
+		try
+		{
+			// Every task is collected, so the pool is idle for the next board
+			for ( int i = 0; i < configurations.length; ++i )
+			{
+				int index = race.take().get();
+				BTSolver solver = solvers[index];
+
+				if ( result != null )
+					continue;
+
+				stats = solver.getStats();
+				if ( solver.getResult() == SolveResult.TIMEOUT )
+					continue;
+
+				// Solved or proven unsolvable, the others can stop
+				stop.set( true );
+				result = solver.getResult();
+				if ( solver.hasSolution() )
+				{
+					solution = solver.getSolution();
+					winner = configurations[index][0];
+					wins[index]++;
+				}
+			}
+
+			if ( result == null )
+				result = SolveResult.TIMEOUT;
+		}
+		catch ( InterruptedException e )
+		{
+			stop.set( true );
+			Thread.currentThread().interrupt();
+		}
+		catch ( ExecutionException e )
+		{
+			stop.set( true );
+			throw new RuntimeException( e.getCause() );
+		}
+
+		return stats;
+	}
+
+	// Outcome of the last race, TIMEOUT if every configuration ran out of budget
+	public SolveResult getResult ( )
+	{
+		return result;
+	}
+
+	public boolean hasSolution ( )
+	{
+		return solution != null;
+	}
+
+	public SudokuBoard getSolution ( )
+	{
+		return solution;
+	}
+
+	// Name of the configuration that solved the last board, or null
+	public String getWinner ( )
+	{
+		return winner;
+	}
+
+	// Stops the worker threads, the solver cannot be used afterwards
+	public void shutdown ( )
+	{
+		executor.shutdownNow();
+	}
+
+	// =================================================================
+	// String representation
+	// =================================================================
+
+	// Win count of every configuration
+	public String toString ( )
+	{
+		StringBuilder sb = new StringBuilder( "Portfolio Wins:" );
+
+		for ( int i = 0; i < configurations.length; ++i )
+			sb.append( "\n  " ).append( configurations[i][0] ).append( ": " ).append( wins[i] );
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,253 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a file with one puzzle per line, one board at a time.
+ *
+ * A line holds the N*N cells in row major order, one character each:
+ * '1'-'9' and 'A'-'Z' (or 'a'-'z') are the values 1 to 35 as in the board
+ * files, '0' and '.' are empty cells. So 81 characters make a 9x9 board,
+ * 256 a 16x16 and 625 a 25x25. The blocks are as square as possible,
+ * p rows by q columns with p <= q. Empty lines and lines starting with
+ * '#' are skipped.
+ *
+ * The file is memory mapped in windows of WINDOW bytes and the cells are
+ * decoded straight from the mapped bytes, so a corpus of any size is
+ * read with a bounded amount of memory. Only the board returned by next()
+ * is allocated per puzzle.
+ */
+
+public class PuzzleStream implements Iterable<SudokuBoard>, Closeable
+{
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	private static final long WINDOW = 64L << 20;
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private long fileSize;
+
+	private MappedByteBuffer window;
+	private long windowStart;   // file offset of window position 0
+	private long lineStart;     // file offset of the next line to read
+	private int lineNumber;
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	public PuzzleStream ( File file ) throws IOException
+	{
+		this.file = new RandomAccessFile( file, "r" );
+		this.channel = this.file.getChannel();
+		this.fileSize = channel.size();
+	}
+
+	// =================================================================
+	// Accessors
+	// =================================================================
+
+	// Line of the board last returned by next(), from 1
+	public int getLineNumber ( )
+	{
+		return lineNumber;
+	}
+
+	// =================================================================
+	// Iterator
+	// =================================================================
+
+	/**
+	 * Boards are read as the iterator advances. A malformed line throws a
+	 * BoardFormatException from hasNext() or next() once the stream has
+	 * moved past it, so the caller can report it and keep iterating. I/O
+	 * errors throw an IllegalStateException wrapping the IOException.
+	 */
+	@Override
+	public Iterator<SudokuBoard> iterator ( )
+	{
+		return new Iterator<SudokuBoard>()
+		{
+			private SudokuBoard nextBoard;
+
+			@Override
+			public boolean hasNext ( )
+			{
+				if ( nextBoard == null )
+					nextBoard = read();
+
+				return nextBoard != null;
+			}
+
+			@Override
+			public SudokuBoard next ( )
+			{
+				if ( ! hasNext() )
+					throw new NoSuchElementException();
+
+				SudokuBoard board = nextBoard;
+				nextBoard = null;
+				return board;
+			}
+
+			@Override
+			public void remove ( )
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public void close ( ) throws IOException
+	{
+		window = null;
+		file.close();
+	}
+
+	// =================================================================
+	// Parsing
+	// =================================================================
+
+	// Reads the next puzzle line, or returns null at the end of the file
+	private SudokuBoard read ( )
+	{
+		try
+		{
+			if ( window == null && lineStart < fileSize )
+				mapWindow( lineStart );
+
+			while ( lineStart < fileSize )
+			{
+				lineNumber++;
+
+				int start = (int) ( lineStart - windowStart );
+				int end = findLineEnd( start );
+				if ( end < 0 )
+				{
+					// The line continues past the window, map from its start
+					mapWindow( lineStart );
+					start = 0;
+					end = findLineEnd( start );
+					if ( end < 0 )
+					{
+						skipLongLine();
+						throw new BoardFormatException( "Line is too long", lineNumber, 1 );
+					}
+				}
+
+				long next = windowStart + end + 1;
+				while ( end > start && window.get( end - 1 ) == '\r' )
+					end--;
+
+				lineStart = next;
+
+				if ( end == start || window.get( start ) == '#' )
+					continue;
+
+				return parse( start, end - start );
+			}
+
+			return null;
+		}
+		catch ( IOException e )
+		{
+			throw new IllegalStateException( e );
+		}
+	}
+
+	/**
+	 * Returns the window index of the '\n' ending the line at start, or
+	 * of the window end if it is the end of the file. Returns -1 when
+	 * the line continues past the window.
+	 */
+	private int findLineEnd ( int start )
+	{
+		int limit = window.limit();
+		for ( int i = start; i < limit; ++i )
+			if ( window.get( i ) == '\n' )
+				return i;
+
+		return windowStart + limit == fileSize ? limit : -1;
+	}
+
+	// Moves lineStart past a line that fills the whole window mapped at it
+	private void skipLongLine ( ) throws IOException
+	{
+		long offset = windowStart + window.limit();
+		while ( offset < fileSize )
+		{
+			mapWindow( offset );
+			int end = findLineEnd( 0 );
+			if ( end >= 0 )
+			{
+				lineStart = windowStart + end + 1;
+				return;
+			}
+			offset = windowStart + window.limit();
+		}
+
+		lineStart = fileSize;
+	}
+
+	private void mapWindow ( long offset ) throws IOException
+	{
+		windowStart = offset;
+		window = channel.map( FileChannel.MapMode.READ_ONLY, offset, Math.min( WINDOW, fileSize - offset ) );
+	}
+
+	// Decodes the length cells at window index start into a board
+	private SudokuBoard parse ( int start, int length )
+	{
+		int n = (int) Math.round( Math.sqrt( length ) );
+		if ( n * n != length || n > 35 )
+			throw new BoardFormatException( length + " cells is not a board", lineNumber, 1 );
+
+		int p = (int) Math.sqrt( n );
+		while ( n % p != 0 )
+			p--;
+
+		int[][] board = new int[n][n];
+		int k = start;
+
+		for ( int i = 0; i < n; ++i )
+		{
+			for ( int j = 0; j < n; ++j, ++k )
+			{
+				int value = cellValue( window.get( k ) );
+				if ( value < 0 || value > n )
+					throw new BoardFormatException( "'" + (char) window.get( k ) + "' is not a cell",
+					                                lineNumber, k - start + 1 );
+				board[i][j] = value;
+			}
+		}
+
+		return new SudokuBoard( p, n / p, board );
+	}
+
+	// Value of a cell character, 0 when empty, -1 if it is not a cell
+	private static int cellValue ( byte c )
+	{
+		if ( c == '.' )
+			return 0;
+
+		if ( c >= '0' && c <= '9' )
+			return c - '0';
+
+		if ( c >= 'A' && c <= 'Z' )
+			return c - 'A' + 10;
+
+		if ( c >= 'a' && c <= 'z' )
+			return c - 'a' + 10;
+
+		return -1;
+	}
+}
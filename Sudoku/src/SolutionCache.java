@@ -0,0 +1,229 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of solutions keyed by the CanonicalForm of the puzzle,
+ * so a puzzle is answered from the cache when any symmetric variant of
+ * it was solved before. Solutions are kept as canonical grids and mapped
+ * back to the orientation and digits of the puzzle asked for. A mapped
+ * solution is checked against the givens and the rules before it is
+ * returned. The least recently used entry is evicted when the cache is
+ * full.
+ *
+ * The cache is safe for use by several threads. Forms are computed
+ * outside of the lock.
+ */
+
+public class SolutionCache
+{
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	private final int capacity;
+	private final LinkedHashMap<CanonicalForm, int[]> entries;
+
+	private long hits;
+	private long misses;
+	private long rejected;
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	public SolutionCache ( final int capacity )
+	{
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<CanonicalForm, int[]>( 16, 0.75f, true )
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry ( Map.Entry<CanonicalForm, int[]> eldest )
+			{
+				return size() > capacity;
+			}
+		};
+	}
+
+	// =================================================================
+	// Accessors
+	// =================================================================
+
+	/**
+	 * Looks puzzle up, first by the form with only its digits relabelled,
+	 * which is found in one pass over the board and answers exact repeats,
+	 * then by its full canonical form. The lookup adds the solution of a
+	 * miss with put().
+	 */
+	public Lookup lookup ( SudokuBoard puzzle )
+	{
+		Lookup lookup = new Lookup( puzzle );
+
+		lookup.relabelled = CanonicalForm.relabelled( puzzle );
+		lookup.solution = get( puzzle, lookup.relabelled );
+
+		if ( lookup.solution == null )
+		{
+			lookup.canonical = CanonicalForm.of( puzzle );
+			lookup.solution = get( puzzle, lookup.canonical );
+
+			// Answer the next exact repeat without the full form
+			if ( lookup.solution != null )
+				store( lookup.relabelled, lookup.solution );
+		}
+
+		synchronized ( this )
+		{
+			if ( lookup.solution != null )
+				hits++;
+			else
+				misses++;
+		}
+
+		return lookup;
+	}
+
+	// The solution cached under key, if it solves puzzle
+	private SudokuBoard get ( SudokuBoard puzzle, CanonicalForm key )
+	{
+		int[] canonical;
+		synchronized ( this )
+		{
+			canonical = entries.get( key );
+		}
+
+		if ( canonical == null )
+			return null;
+
+		SudokuBoard solution = key.fromCanonical( canonical );
+		if ( solves( solution, puzzle ) )
+			return solution;
+
+		synchronized ( this )
+		{
+			rejected++;
+		}
+		return null;
+	}
+
+	private void store ( CanonicalForm key, SudokuBoard solution )
+	{
+		int[] canonical = key.toCanonical( solution );
+
+		synchronized ( this )
+		{
+			entries.put( key, canonical );
+		}
+	}
+
+	public synchronized int size ( )
+	{
+		return entries.size();
+	}
+
+	public int getCapacity ( )
+	{
+		return capacity;
+	}
+
+	public synchronized long getHits ( )
+	{
+		return hits;
+	}
+
+	public synchronized long getMisses ( )
+	{
+		return misses;
+	}
+
+	// Cached solutions that did not solve the puzzle looked up
+	public synchronized long getRejected ( )
+	{
+		return rejected;
+	}
+
+	// =================================================================
+	// Lookup
+	// =================================================================
+
+	// The result of one lookup, which remembers the forms of the puzzle
+	public class Lookup
+	{
+		private final SudokuBoard puzzle;
+		private CanonicalForm relabelled;
+		private CanonicalForm canonical;
+		private SudokuBoard solution;
+
+		private Lookup ( SudokuBoard puzzle )
+		{
+			this.puzzle = puzzle;
+		}
+
+		// The cached solution of the puzzle, null on a miss
+		public SudokuBoard getSolution ( )
+		{
+			return solution;
+		}
+
+		// Caches the solution found for the puzzle after a miss
+		public void put ( SudokuBoard found )
+		{
+			if ( solution != null || ! solves( found, puzzle ) )
+				return;
+
+			store( relabelled, found );
+			store( canonical, found );
+		}
+	}
+
+	// =================================================================
+	// Verification
+	// =================================================================
+
+	// Whether solution keeps the givens of puzzle and breaks no rule
+	static boolean solves ( SudokuBoard solution, SudokuBoard puzzle )
+	{
+		int p = puzzle.getP();
+		int q = puzzle.getQ();
+		int n = p * q;
+		if ( solution.getP() != p || solution.getQ() != q )
+			return false;
+
+		int[][] given = puzzle.getBoard();
+		int[][] cells = solution.getBoard();
+		boolean[] rowSeen = new boolean[n * ( n + 1 )];
+		boolean[] colSeen = new boolean[n * ( n + 1 )];
+		boolean[] blockSeen = new boolean[n * ( n + 1 )];
+
+		for ( int i = 0; i < n; ++i )
+		{
+			for ( int j = 0; j < n; ++j )
+			{
+				int v = cells[i][j];
+				if ( v < 1 || v > n || ( given[i][j] != 0 && given[i][j] != v ) )
+					return false;
+
+				int block = i / p * p + j / q;
+				if ( rowSeen[i * ( n + 1 ) + v] || colSeen[j * ( n + 1 ) + v] || blockSeen[block * ( n + 1 ) + v] )
+					return false;
+
+				rowSeen[i * ( n + 1 ) + v] = true;
+				colSeen[j * ( n + 1 ) + v] = true;
+				blockSeen[block * ( n + 1 ) + v] = true;
+			}
+		}
+
+		return true;
+	}
+
+	// =================================================================
+	// String representation
+	// =================================================================
+
+	public synchronized String toString ( )
+	{
+		return "Cache: " + hits + " hits, " + misses + " misses, " + rejected + " rejected, "
+		       + entries.size() + "/" + capacity + " entries";
+	}
+}
@@ -0,0 +1,239 @@
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Formats boards and messages into a reusable byte buffer and writes it
+ * to a channel when it fills up, so batch output costs one system call
+ * per buffer instead of a synchronized println per line.
+ *
+ * Modes:
+ *   QUIET    nothing is written
+ *   COMPACT  one line per board: the label, a space and the cells in row
+ *            major order as in PuzzleStream files, '.' for empty cells
+ *   PRETTY   the label on its own line, then the board as toString()
+ *            prints it
+ *
+ * Only ASCII is written. A writer is not safe for use by several threads.
+ */
+
+public class SolutionWriter implements Closeable, Flushable
+{
+	public enum Mode
+	{
+		QUIET,
+		COMPACT,
+		PRETTY
+	}
+
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	private final WritableByteChannel channel;
+	private final boolean ownsChannel;
+	private final Mode mode;
+
+	private byte[] buffer = new byte[1 << 16];
+	private ByteBuffer wrapper = ByteBuffer.wrap( buffer );
+	private int length;
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	// Writes to channel, which close() closes
+	public SolutionWriter ( WritableByteChannel channel, Mode mode )
+	{
+		this( channel, mode, true );
+	}
+
+	private SolutionWriter ( WritableByteChannel channel, Mode mode, boolean ownsChannel )
+	{
+		this.channel = channel;
+		this.mode = mode;
+		this.ownsChannel = ownsChannel;
+	}
+
+	/**
+	 * Writes to the standard output, bypassing System.out. close() only
+	 * flushes. Flush before printing to System.out to keep the order.
+	 */
+	public static SolutionWriter toStandardOutput ( Mode mode )
+	{
+		return new SolutionWriter( new FileOutputStream( FileDescriptor.out ).getChannel(), mode, false );
+	}
+
+	// =================================================================
+	// Accessors
+	// =================================================================
+
+	public Mode getMode ( )
+	{
+		return mode;
+	}
+
+	// =================================================================
+	// Writing
+	// =================================================================
+
+	// Writes board under label in the format of the mode
+	public void write ( String label, SudokuBoard board ) throws IOException
+	{
+		if ( mode == Mode.COMPACT )
+		{
+			putString( label );
+			put( ' ' );
+			putCompact( board );
+			put( '\n' );
+		}
+		else if ( mode == Mode.PRETTY )
+		{
+			putString( label );
+			put( '\n' );
+			putPretty( board );
+		}
+	}
+
+	// Writes a message about the board under label, such as a failure
+	public void message ( String label, String text ) throws IOException
+	{
+		if ( mode == Mode.QUIET )
+			return;
+
+		putString( label );
+		putString( mode == Mode.COMPACT ? " " : ": " );
+		putString( text );
+		put( '\n' );
+	}
+
+	@Override
+	public void flush ( ) throws IOException
+	{
+		wrapper.clear().limit( length );
+		while ( wrapper.hasRemaining() )
+			channel.write( wrapper );
+
+		length = 0;
+	}
+
+	@Override
+	public void close ( ) throws IOException
+	{
+		flush();
+
+		if ( ownsChannel )
+			channel.close();
+	}
+
+	// =================================================================
+	// Formatting
+	// =================================================================
+
+	// The cells on one line, a character each when N < 36, else spaced
+	private void putCompact ( SudokuBoard board ) throws IOException
+	{
+		int n = board.getN();
+		int[][] cells = board.getBoard();
+		boolean spaced = n >= 36;
+
+		reserve( spaced ? n * n * 5 : n * n );
+		for ( int i = 0; i < n; ++i )
+		{
+			for ( int j = 0; j < n; ++j )
+			{
+				if ( spaced && ( i > 0 || j > 0 ) )
+					buffer[length++] = ' ';
+
+				if ( cells[i][j] == 0 && ! spaced )
+					buffer[length++] = '.';
+				else
+					putOdometer( cells[i][j] );
+			}
+		}
+	}
+
+	// Same layout as SudokuBoard.toString()
+	private void putPretty ( SudokuBoard board ) throws IOException
+	{
+		int p = board.getP();
+		int q = board.getQ();
+		int n = p * q;
+		int[][] cells = board.getBoard();
+
+		putString( "P: " + p + "\tQ: " + q + "\n" );
+		reserve( ( 5 * n + 2 * p + 1 ) * ( n + p ) );
+
+		for ( int i = 0; i < n; ++i )
+		{
+			for ( int j = 0; j < n; ++j )
+			{
+				putOdometer( cells[i][j] );
+				buffer[length++] = ' ';
+
+				if ( ( j + 1 ) % q == 0 && j != 0 && j != n - 1 )
+				{
+					buffer[length++] = '|';
+					buffer[length++] = ' ';
+				}
+			}
+			buffer[length++] = '\n';
+
+			if ( ( i + 1 ) % p == 0 && i != 0 && i != n - 1 )
+			{
+				for ( int k = 0; k < n + p - 1; ++k )
+				{
+					buffer[length++] = '-';
+					buffer[length++] = ' ';
+				}
+				buffer[length++] = '\n';
+			}
+		}
+	}
+
+	// Lower case base 36 like SudokuBoard.toString(), room must be reserved
+	private void putOdometer ( int value )
+	{
+		if ( value >= 0 && value < 36 )
+		{
+			buffer[length++] = (byte) Character.forDigit( value, 36 );
+			return;
+		}
+
+		String digits = Integer.toString( value, 36 );
+		for ( int k = 0; k < digits.length(); ++k )
+			buffer[length++] = (byte) digits.charAt( k );
+	}
+
+	private void putString ( String s ) throws IOException
+	{
+		reserve( s.length() );
+		for ( int k = 0; k < s.length(); ++k )
+			buffer[length++] = (byte) s.charAt( k );
+	}
+
+	private void put ( char c ) throws IOException
+	{
+		reserve( 1 );
+		buffer[length++] = (byte) c;
+	}
+
+	// Makes room for count more bytes, flushing or growing the buffer
+	private void reserve ( int count ) throws IOException
+	{
+		if ( length + count <= buffer.length )
+			return;
+
+		flush();
+
+		if ( count > buffer.length )
+		{
+			buffer = new byte[count];
+			wrapper = ByteBuffer.wrap( buffer );
+		}
+	}
+}
@@ -0,0 +1,82 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Limits of one BTSolver.solve( SolveBudget ) call: a time limit, a limit
+ * on the search nodes and a cancellation token. The search checks them
+ * cooperatively at every node and backtrack, and returns TIMEOUT once
+ * one of them is reached.
+ *
+ * The setters return the budget, so limits can be chained:
+ *
+ *     solver.solve( new SolveBudget().setTimeout( 1000 ).setNodeLimit( 100000 ) )
+ */
+
+public class SolveBudget
+{
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	private long timeoutMillis = 0;
+	private long nodeLimit = Long.MAX_VALUE;
+	private AtomicBoolean cancelToken = new AtomicBoolean();
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	// A budget without limits
+	public SolveBudget ( )
+	{
+	}
+
+	// =================================================================
+	// Accessors
+	// =================================================================
+
+	// Time limit in milliseconds from the start of the solve, 0 for none
+	public long getTimeout ( )
+	{
+		return timeoutMillis;
+	}
+
+	public long getNodeLimit ( )
+	{
+		return nodeLimit;
+	}
+
+	// The token that cancels the solve once set
+	public AtomicBoolean getCancelToken ( )
+	{
+		return cancelToken;
+	}
+
+	// =================================================================
+	// Modifiers
+	// =================================================================
+
+	public SolveBudget setTimeout ( long millis )
+	{
+		this.timeoutMillis = millis;
+		return this;
+	}
+
+	public SolveBudget setNodeLimit ( long nodes )
+	{
+		this.nodeLimit = nodes;
+		return this;
+	}
+
+	// The token can be shared by several budgets to cancel them all
+	public SolveBudget setCancelToken ( AtomicBoolean token )
+	{
+		this.cancelToken = token;
+		return this;
+	}
+
+	// Cancels the solves using this budget, from any thread
+	public void cancel ( )
+	{
+		cancelToken.set( true );
+	}
+}
@@ -0,0 +1,294 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * A SolverListener that adds up the events of any number of solvers.
+ *
+ * The counters are atomic, so the same metrics can be shared by solvers
+ * on several threads and read while they run: through JMX, as a line
+ * logged periodically, or with the accessors.
+ */
+
+public class SolveMetrics implements SolverListener, SolveMetricsMBean
+{
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	public static final String[] PROPAGATOR_NAMES =
+	{
+		"forwardChecking", "norvigSingles", "arcConsistency", "allDifferentSubsets", "allDifferentMatching"
+	};
+
+	// Deeper nodes are counted in the last bucket of the histogram
+	private static final int DEPTH_BUCKETS = 1024;
+
+	private final AtomicLong nodes         = new AtomicLong();
+	private final AtomicLong selectNanos   = new AtomicLong();
+	private final AtomicLong valueNanos    = new AtomicLong();
+	private final AtomicLong checkNanos    = new AtomicLong();
+	private final AtomicLong checks        = new AtomicLong();
+	private final AtomicLong wipeouts      = new AtomicLong();
+	private final AtomicLong cacheHits     = new AtomicLong();
+	private final AtomicLong cacheNanos    = new AtomicLong();
+	private final AtomicLongArray pruned   = new AtomicLongArray( PROPAGATORS );
+	private final AtomicLongArray depths   = new AtomicLongArray( DEPTH_BUCKETS );
+
+	private ScheduledExecutorService logger;
+
+	// =================================================================
+	// SolverListener
+	// =================================================================
+
+	@Override
+	public void nodeVisited ( int depth )
+	{
+		nodes.incrementAndGet();
+		depths.incrementAndGet( Math.min( depth, DEPTH_BUCKETS - 1 ) );
+	}
+
+	@Override
+	public void variableSelected ( long nanos )
+	{
+		selectNanos.addAndGet( nanos );
+	}
+
+	@Override
+	public void valuesOrdered ( long nanos )
+	{
+		valueNanos.addAndGet( nanos );
+	}
+
+	@Override
+	public void consistencyChecked ( long nanos, boolean consistent )
+	{
+		checkNanos.addAndGet( nanos );
+		checks.incrementAndGet();
+
+		if ( ! consistent )
+			wipeouts.incrementAndGet();
+	}
+
+	@Override
+	public void valuesPruned ( int propagator, int count )
+	{
+		pruned.addAndGet( propagator, count );
+	}
+
+	@Override
+	public void solvedFromCache ( long nanos )
+	{
+		cacheHits.incrementAndGet();
+		cacheNanos.addAndGet( nanos );
+	}
+
+	// =================================================================
+	// Accessors
+	// =================================================================
+
+	@Override
+	public long getNodes ( )
+	{
+		return nodes.get();
+	}
+
+	// Deepest node visited so far
+	@Override
+	public long getMaxDepth ( )
+	{
+		for ( int d = DEPTH_BUCKETS - 1; d > 0; --d )
+			if ( depths.get( d ) > 0 )
+				return d;
+
+		return 0;
+	}
+
+	@Override
+	public long getSelectMillis ( )
+	{
+		return selectNanos.get() / 1000000;
+	}
+
+	@Override
+	public long getValueOrderMillis ( )
+	{
+		return valueNanos.get() / 1000000;
+	}
+
+	@Override
+	public long getConsistencyMillis ( )
+	{
+		return checkNanos.get() / 1000000;
+	}
+
+	@Override
+	public long getConsistencyChecks ( )
+	{
+		return checks.get();
+	}
+
+	@Override
+	public long getWipeouts ( )
+	{
+		return wipeouts.get();
+	}
+
+	@Override
+	public long getCacheHits ( )
+	{
+		return cacheHits.get();
+	}
+
+	@Override
+	public long getCacheMillis ( )
+	{
+		return cacheNanos.get() / 1000000;
+	}
+
+	@Override
+	public long[] getPrunedValues ( )
+	{
+		long[] values = new long[PROPAGATORS];
+		for ( int i = 0; i < PROPAGATORS; ++i )
+			values[i] = pruned.get( i );
+
+		return values;
+	}
+
+	// Nodes per depth, up to the deepest node visited
+	@Override
+	public long[] getDepthHistogram ( )
+	{
+		long[] histogram = new long[(int) getMaxDepth() + 1];
+		for ( int d = 0; d < histogram.length; ++d )
+			histogram[d] = depths.get( d );
+
+		return histogram;
+	}
+
+	// =================================================================
+	// Modifiers
+	// =================================================================
+
+	@Override
+	public void reset ( )
+	{
+		nodes.set( 0 );
+		selectNanos.set( 0 );
+		valueNanos.set( 0 );
+		checkNanos.set( 0 );
+		checks.set( 0 );
+		wipeouts.set( 0 );
+		cacheHits.set( 0 );
+		cacheNanos.set( 0 );
+
+		for ( int i = 0; i < PROPAGATORS; ++i )
+			pruned.set( i, 0 );
+
+		for ( int d = 0; d < DEPTH_BUCKETS; ++d )
+			depths.set( d, 0 );
+	}
+
+	// =================================================================
+	// Export
+	// =================================================================
+
+	/**
+	 * Registers the metrics with the platform MBean server as
+	 * SudokuAI:type=SolveMetrics,name="name", the name quoted as by
+	 * ObjectName.quote().
+	 *
+	 * Return: false if the registration failed
+	 */
+	public boolean registerMBean ( String name )
+	{
+		try
+		{
+			ObjectName objectName = new ObjectName( "SudokuAI:type=SolveMetrics,name=" + ObjectName.quote( name ) );
+			ManagementFactory.getPlatformMBeanServer().registerMBean( this, objectName );
+			return true;
+		}
+		catch ( JMException e )
+		{
+			return false;
+		}
+	}
+
+	// Prints toString() to out every periodMillis on a daemon thread
+	public synchronized void startLogging ( long periodMillis, final PrintStream out )
+	{
+		stopLogging();
+
+		logger = Executors.newSingleThreadScheduledExecutor( new ThreadFactory()
+		{
+			@Override
+			public Thread newThread ( Runnable r )
+			{
+				Thread t = new Thread( r, "solve-metrics" );
+				t.setDaemon( true );
+				return t;
+			}
+		} );
+
+		logger.scheduleAtFixedRate( new Runnable()
+		{
+			@Override
+			public void run ( )
+			{
+				out.println( "[metrics] " + SolveMetrics.this.toString() );
+			}
+		}, periodMillis, periodMillis, TimeUnit.MILLISECONDS );
+	}
+
+	public synchronized void stopLogging ( )
+	{
+		if ( logger != null )
+		{
+			logger.shutdownNow();
+			logger = null;
+		}
+	}
+
+	// =================================================================
+	// String representation
+	// =================================================================
+
+	// One line with every counter but the depth histogram
+	public String toString ( )
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append( "nodes=" ).append( getNodes() );
+		sb.append( " maxDepth=" ).append( getMaxDepth() );
+		sb.append( " select=" ).append( getSelectMillis() ).append( "ms" );
+		sb.append( " values=" ).append( getValueOrderMillis() ).append( "ms" );
+		sb.append( " checks=" ).append( getConsistencyChecks() );
+		sb.append( " check=" ).append( getConsistencyMillis() ).append( "ms" );
+		sb.append( " wipeouts=" ).append( getWipeouts() );
+
+		if ( getCacheHits() > 0 )
+			sb.append( " cacheHits=" ).append( getCacheHits() ).append( " cache=" ).append( getCacheMillis() ).append( "ms" );
+
+		long[] values = getPrunedValues();
+		for ( int i = 0; i < PROPAGATORS; ++i )
+			if ( values[i] > 0 )
+				sb.append( " " ).append( PROPAGATOR_NAMES[i] ).append( "=" ).append( values[i] );
+
+		return sb.toString();
+	}
+
+	// toString() followed by the nodes per depth
+	public String report ( )
+	{
+		return toString() + "\nDepth Histogram: " + Arrays.toString( getDepthHistogram() );
+	}
+}
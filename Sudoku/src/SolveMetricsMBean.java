@@ -0,0 +1,33 @@
+/**
+ * JMX view of a SolveMetrics, times are in milliseconds.
+ */
+
+public interface SolveMetricsMBean
+{
+	long getNodes ( );
+
+	long getMaxDepth ( );
+
+	long getSelectMillis ( );
+
+	long getValueOrderMillis ( );
+
+	long getConsistencyMillis ( );
+
+	long getConsistencyChecks ( );
+
+	long getWipeouts ( );
+
+	// Solves answered by the solution cache, and the time spent on them
+	long getCacheHits ( );
+
+	long getCacheMillis ( );
+
+	// Values pruned per propagator, indexed like SolveMetrics.PROPAGATOR_NAMES
+	long[] getPrunedValues ( );
+
+	// Nodes visited per depth
+	long[] getDepthHistogram ( );
+
+	void reset ( );
+}
@@ -0,0 +1,11 @@
+/**
+ * Outcome of a solve: a solution was found, the board has none, or the
+ * search was stopped by its budget before it could tell.
+ */
+
+public enum SolveResult
+{
+	SOLVED,
+	UNSAT,
+	TIMEOUT
+}
@@ -0,0 +1,146 @@
+/**
+ * Counters collected by one BTSolver.solve() call. Stats of several
+ * solves can be added together for batch totals.
+ */
+
+public class SolveStats
+{
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	private long pushes;
+	private long undos;
+	private long nodes;
+	private int  maxDepth;
+	private long propagations;
+	private long restarts;
+	private long wallTimeNanos;
+	private int  boards;
+	private int  solutions;
+	private int  timeouts;
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	// An empty total, to add() results into
+	public SolveStats ( )
+	{
+	}
+
+	public SolveStats ( long pushes, long undos, long nodes, int maxDepth,
+	                    long propagations, long restarts, long wallTimeNanos, SolveResult result )
+	{
+		this.pushes        = pushes;
+		this.undos         = undos;
+		this.nodes         = nodes;
+		this.maxDepth      = maxDepth;
+		this.propagations  = propagations;
+		this.restarts      = restarts;
+		this.wallTimeNanos = wallTimeNanos;
+		this.boards        = 1;
+		this.solutions     = result == SolveResult.SOLVED ? 1 : 0;
+		this.timeouts      = result == SolveResult.TIMEOUT ? 1 : 0;
+	}
+
+	// =================================================================
+	// Accessors
+	// =================================================================
+
+	// Trail pushes
+	public long getPushes ( )
+	{
+		return pushes;
+	}
+
+	// Trail undos, i.e. backtracks
+	public long getUndos ( )
+	{
+		return undos;
+	}
+
+	// Search nodes expanded
+	public long getNodes ( )
+	{
+		return nodes;
+	}
+
+	public int getMaxDepth ( )
+	{
+		return maxDepth;
+	}
+
+	// Consistency check calls
+	public long getPropagations ( )
+	{
+		return propagations;
+	}
+
+	// Times the search started over from the root
+	public long getRestarts ( )
+	{
+		return restarts;
+	}
+
+	public long getWallTimeNanos ( )
+	{
+		return wallTimeNanos;
+	}
+
+	// Number of solves added into these stats
+	public int getBoards ( )
+	{
+		return boards;
+	}
+
+	public int getSolutions ( )
+	{
+		return solutions;
+	}
+
+	// Solves stopped by their budget
+	public int getTimeouts ( )
+	{
+		return timeouts;
+	}
+
+	// =================================================================
+	// Modifiers
+	// =================================================================
+
+	// Adds other into this total; depth is the maximum of both
+	public void add ( SolveStats other )
+	{
+		pushes        += other.pushes;
+		undos         += other.undos;
+		nodes         += other.nodes;
+		maxDepth       = Math.max( maxDepth, other.maxDepth );
+		propagations  += other.propagations;
+		restarts      += other.restarts;
+		wallTimeNanos += other.wallTimeNanos;
+		boards        += other.boards;
+		solutions     += other.solutions;
+		timeouts      += other.timeouts;
+	}
+
+	// =================================================================
+	// String representation
+	// =================================================================
+
+	public String toString ( )
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append( "Trail Pushes: " ).append( pushes ).append( "\n" );
+		sb.append( "Backtracks: " ).append( undos ).append( "\n" );
+		sb.append( "Nodes: " ).append( nodes ).append( "\n" );
+		sb.append( "Max Depth: " ).append( maxDepth ).append( "\n" );
+		sb.append( "Propagations: " ).append( propagations ).append( "\n" );
+		if ( restarts > 0 )
+			sb.append( "Restarts: " ).append( restarts ).append( "\n" );
+		if ( timeouts > 0 )
+			sb.append( "Timeouts: " ).append( timeouts ).append( "\n" );
+		sb.append( "Time (ms): " ).append( wallTimeNanos / 1000000 );
+		return sb.toString();
+	}
+}
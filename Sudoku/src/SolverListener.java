@@ -0,0 +1,36 @@
+/**
+ * Receives the events of a BTSolver search, for metrics and tracing.
+ *
+ * The solver only reads the clock and calls the listener while one is
+ * attached, so an unobserved search pays a null check per event.
+ * Times are in nanoseconds.
+ */
+
+public interface SolverListener
+{
+	// Propagators reported by valuesPruned
+	int FORWARD_CHECKING = 0;
+	int NORVIG_SINGLES   = 1;
+	int ARC_CONSISTENCY  = 2;
+	int ALLDIFF_SUBSETS  = 3;
+	int ALLDIFF_MATCHING = 4;
+	int PROPAGATORS      = 5;
+
+	// Called when the search expands a node at depth
+	void nodeVisited ( int depth );
+
+	// Time spent choosing the branching variable of a node
+	void variableSelected ( long nanos );
+
+	// Time spent ordering the values of the branching variable
+	void valuesOrdered ( long nanos );
+
+	// Time spent in one consistency check, consistent is false on a wipeout
+	void consistencyChecked ( long nanos, boolean consistent );
+
+	// Called after propagator removed count values from a domain
+	void valuesPruned ( int propagator, int count );
+
+	// Called when a solve is answered by the solution cache without a search
+	void solvedFromCache ( long nanos );
+}
@@ -1,8 +1,5 @@
-import java.io.Reader;
-import java.io.FileReader;
 import java.io.File;
 import java.io.IOException;
-import java.util.Scanner;
 import java.util.Random;
 
 /**
@@ -22,6 +19,16 @@ public class SudokuBoard
 
 	private int[][] board = null;
 
+	// One parser per thread, so loading many boards reuses its buffers
+	private static final ThreadLocal<BoardParser> PARSER = new ThreadLocal<BoardParser>()
+	{
+		@Override
+		protected BoardParser initialValue ( )
+		{
+			return new BoardParser();
+		}
+	};
+
 	// =================================================================
 	// Constructors
 	// =================================================================
@@ -44,6 +51,17 @@ public class SudokuBoard
 		this.board = board == null ? new int[9][9] : board;
 	}
 
+	// Copy Constructor, the copy gets its own grid
+	public SudokuBoard ( SudokuBoard other )
+	{
+		this.p = other.p;
+		this.q = other.q;
+		this.board = new int[other.board.length][];
+
+		for ( int i = 0; i < board.length; ++i )
+			board[i] = other.board[i].clone();
+	}
+
 	// Will generate a random Sudoku board
 	public SudokuBoard ( int p, int q, int m )
 	{
@@ -70,33 +88,28 @@ public class SudokuBoard
 		}
 	}
 
-	// Will load a Sudoku board from file
+	/**
+	 * Will load a Sudoku board from file.
+	 *
+	 * Throws a BoardFormatException if the file is malformed, and an
+	 * IllegalArgumentException if it cannot be read.
+	 */
 	public SudokuBoard ( File file )
 	{
+		BoardParser parser = PARSER.get();
+
 		try
 		{
-			Reader reader = new FileReader(file);
-			Scanner scanner = new Scanner(reader);
-			this.p = scanner.nextInt();
-			this.q = scanner.nextInt();
-			int N = p*q;
-			this.board = new int[N][N];
-
-			for ( int i = 0; i < N; ++i )
-			{
-				for ( int j = 0; j < N; ++j )
-				{
-					if ( ! scanner.hasNext() )
-						System.out.println("Incomplete or Emtpy board for file " + file +". Please be advised");
-
-					board[i][j] = odometerToInt( scanner.next() );
-				}
-			}
+			parser.parse( file );
 		}
-		catch ( Exception e )
+		catch ( IOException e )
 		{
-			e.printStackTrace();
+			throw new IllegalArgumentException( "Failed to read " + file + ": " + e.getMessage(), e );
 		}
+
+		this.p = parser.getP();
+		this.q = parser.getQ();
+		this.board = parser.copyGrid();
 	}
 
 	// =================================================================
@@ -130,7 +143,7 @@ public class SudokuBoard
 	public String toString ( )
 	{
 		int N = getN();
-		StringBuilder sb = new StringBuilder();
+		StringBuilder sb = new StringBuilder( ( 2 * N + 2 * p ) * ( N + p ) + 16 );
 		sb.append("P: ");
 		sb.append(p);
 		sb.append("\tQ: ");
@@ -140,7 +153,8 @@ public class SudokuBoard
 		{
 			for(int j = 0; j < N; j++)
 			{
-				sb.append( intToOdometer(board[i][j]) + " " );
+				appendOdometer( sb, board[i][j] );
+				sb.append( ' ' );
 				if((j+1)%q==0 && j!= 0 && j != N-1)
 				{
 					sb.append("| ");
@@ -212,27 +226,12 @@ public class SudokuBoard
 		return true;
 	}
 
-	private int odometerToInt ( String str )
-	{
-		int x = 0;
-
-		if ( str.charAt(0) >= '0' && str.charAt(0) <= '9' )
-			x = str.charAt(0) - '0';
-
-		if ( str.charAt(0) >= 'A' && str.charAt(0) <= 'Z' )
-			x = str.charAt(0) - 'A' + 10;
-
-		for ( int i = 1; i < str.length(); ++i )
-			x *= 36;
-
-		if ( str.length() > 1 )
-			return x + odometerToInt ( str.substring( 1, str.length() ) );
-
-		return x;
-	}
-
-	private String intToOdometer ( int n )
+	// Appends n in base 36 without building a String for single digits
+	private static void appendOdometer ( StringBuilder sb, int n )
 	{
-		return Integer.toString( n, 36 );
+		if ( n >= 0 && n < 36 )
+			sb.append( Character.forDigit( n, 36 ) );
+		else
+			sb.append( Integer.toString( n, 36 ) );
 	}
 }
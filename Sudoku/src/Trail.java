@@ -1,8 +1,14 @@
-import java.util.EmptyStackException;
-import java.util.Stack;
+import java.util.Arrays;
 
 /**
  * Represents the trail of changes made. This allows backtracking to occur.
+ *
+ * Each entry is a variable and the words of its domain bitmask at the
+ * time of the push. The entries live in parallel growable arrays, so
+ * push and undo only copy a few longs and move an index.
+ *
+ * The push and undo counters belong to the trail instance. A trail is
+ * meant to be used by one solver at a time.
  */
 
 public class Trail
@@ -11,11 +17,17 @@ public class Trail
 	// Properties
 	// =================================================================
 
-	private Stack<Object[]> trailStack  = new Stack<Object[]>();
-	private Stack<Integer>  trailMarker = new Stack<Integer>();
+	private Variable[] trailVars    = new Variable[64];
+	private int[]      trailOffsets = new int[64];  // first word of each entry
+	private long[]     trailWords   = new long[64];
+	private int        trailSize    = 0;
+	private int        wordsSize    = 0;
 
-	private static int numPush = 0;
-	private static int numUndo = 0;
+	private int[] trailMarkers = new int[16];
+	private int   markerCount  = 0;
+
+	private long numPush = 0;
+	private long numUndo = 0;
 
 	// =================================================================
 	// Constructor
@@ -31,15 +43,15 @@ public class Trail
 
 	public int size ( )
 	{
-		return trailStack.size();
+		return trailSize;
 	}
 
-	public static int getPushCount ( )
+	public long getPushCount ( )
 	{
 		return numPush;
 	}
 
-	public static int getUndoCount ( )
+	public long getUndoCount ( )
 	{
 		return numUndo;
 	}
@@ -51,7 +63,10 @@ public class Trail
 	// Places a marker in the trail
 	public void placeTrailMarker ( )
 	{
-		trailMarker.add( trailStack.size() );
+		if ( markerCount == trailMarkers.length )
+			trailMarkers = Arrays.copyOf( trailMarkers, 2 * markerCount );
+
+		trailMarkers[markerCount++] = trailSize;
 	}
 
 	/**
@@ -64,36 +79,55 @@ public class Trail
 	public void push ( Variable v )
 	{
 		numPush++;
-		Object[] vPair = { v, new Domain( v.getDomain() )};
-		trailStack.push( vPair );
+
+		Domain d = v.getDomain();
+		int count = d.wordCount();
+
+		if ( trailSize == trailVars.length )
+		{
+			trailVars    = Arrays.copyOf( trailVars, 2 * trailSize );
+			trailOffsets = Arrays.copyOf( trailOffsets, 2 * trailSize );
+		}
+
+		if ( wordsSize + count > trailWords.length )
+			trailWords = Arrays.copyOf( trailWords, Math.max( 2 * trailWords.length, wordsSize + count ) );
+
+		trailVars[trailSize] = v;
+		trailOffsets[trailSize++] = wordsSize;
+
+		for ( int w = 0; w < count; ++w )
+			trailWords[wordsSize++] = d.getWord( w );
 	}
 
 	// Pops and restores variables on the trail until the last trail marker
 	public void undo ( )
 	{
 		numUndo++;
-		try
+
+		if ( markerCount == 0 )
 		{
-			int targetSize = trailMarker.pop();
-			for ( int size = trailStack.size(); size > targetSize; --size )
-			{
-				Object[] vPair = trailStack.pop();
-				Variable v = (Variable) vPair[0];
-				v.setDomain((Domain) vPair[1]);
-				v.setModified( false );
-			}
+			clear();
+			return;
 		}
-		catch ( EmptyStackException e )
+
+		int targetSize = trailMarkers[--markerCount];
+		while ( trailSize > targetSize )
 		{
-			clear();
+			int entry = --trailSize;
+			int offset = trailOffsets[entry];
+
+			trailVars[entry].restoreDomain( trailWords, offset, wordsSize - offset );
+			trailVars[entry] = null;
+			wordsSize = offset;
 		}
 	}
 
 	// Clears the trail
 	public void clear ( )
 	{
-		trailStack.clear();
-		trailMarker.clear();
+		Arrays.fill( trailVars, 0, trailSize, null );
+		trailSize   = 0;
+		wordsSize   = 0;
+		markerCount = 0;
 	}
 }
-
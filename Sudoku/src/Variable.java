@@ -1,8 +1,13 @@
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Represents a variable in a CSP
+ *
+ * A variable either owns its domain, or is a view over a cell of a
+ * VariableStore, in which case its domain and modified flag live in the
+ * store's arrays.
  */
 
 public class Variable implements Iterable<Integer>
@@ -11,12 +16,15 @@ public class Variable implements Iterable<Integer>
 	// Properties
 	// =================================================================
 
-	private static int namingCounter = 1;
+	private static AtomicInteger namingCounter = new AtomicInteger( 1 );
 	private Domain domain;
 	private int row, col, block;
 	private boolean modified;
 	private boolean changeable;
 	private String name;
+	private int id = -1;
+	private DomainListener listener;
+	private VariableStore store;
 
 	private int oldSize;
 
@@ -26,11 +34,17 @@ public class Variable implements Iterable<Integer>
 
 	public Variable ( List<Integer> possible_Values, int row, int col, int block )
 	{
-		this.domain = new Domain( possible_Values );
+		this( new Domain( possible_Values ), row, col, block );
+	}
+
+	// Takes ownership of the given domain
+	public Variable ( Domain domain, int row, int col, int block )
+	{
+		this.domain = domain;
 		this.row = row;
 		this.col = col;
 		this.block = block;
-		this.name = "v" + namingCounter++;
+		this.name = "v" + namingCounter.getAndIncrement();
 		this.oldSize = size();
 		this.modified = false;
 		this.changeable = true;
@@ -42,14 +56,49 @@ public class Variable implements Iterable<Integer>
 		}
 	}
 
+	// A view over cell of store, whose domain and cell fields are already set
+	public Variable ( VariableStore store, int cell )
+	{
+		this.store = store;
+		this.domain = store.domainView( cell );
+		this.row = store.row( cell );
+		this.col = store.col( cell );
+		this.block = store.block( cell );
+		this.name = "v" + namingCounter.getAndIncrement();
+		this.id = cell;
+		this.oldSize = size();
+		this.changeable = true;
+
+		if ( size() == 1 )
+		{
+			setFlag( true );
+			changeable = false;
+		}
+	}
+
+	// A view over the same cell of store, keeping the name and state of v
+	public Variable ( VariableStore store, Variable v )
+	{
+		this.store = store;
+		this.domain = store.domainView( v.id );
+		this.row = v.row;
+		this.col = v.col;
+		this.block = v.block;
+		this.name = v.name;
+		this.id = v.id;
+		this.changeable = v.changeable;
+	}
+
+	// Copy Constructor, the copy gets its own copy of the domain
 	public Variable ( Variable v )
 	{
-		this.domain = v.domain;
+		this.domain = new Domain( v.domain );
 		this.row = v.row;
 		this.col = v.col;
 		this.block = v.block;
-		this.modified = v.modified;
+		this.modified = v.isModified();
 		this.name = v.name;
+		this.id = v.id;
 		this.changeable = v.changeable;
 	}
 
@@ -69,7 +118,7 @@ public class Variable implements Iterable<Integer>
 
 	public boolean isModified ( )
 	{
-		return modified;
+		return store == null ? modified : store.isModified( id );
 	}
 
 	public int row ( )
@@ -96,7 +145,7 @@ public class Variable implements Iterable<Integer>
 	public Integer getAssignment ( )
 	{
 		if ( isAssigned() )
-			return domain.getValues().get( 0 );
+			return domain.first();
 
 		return 0;
 	}
@@ -111,6 +160,12 @@ public class Variable implements Iterable<Integer>
 		return name;
 	}
 
+	// Returns the index of the variable in its ConstraintNetwork, or -1
+	public int getId ( )
+	{
+		return id;
+	}
+
 	public List<Integer> getValues ( )
 	{
 		return domain.getValues();
@@ -120,10 +175,25 @@ public class Variable implements Iterable<Integer>
 	// Modifiers
 	// =================================================================
 
+	// Set by ConstraintNetwork when the variable is added to it
+	void setId ( int id )
+	{
+		this.id = id;
+	}
+
+	// Registers the listener told about domain size changes, or null
+	public void setDomainListener ( DomainListener listener )
+	{
+		this.listener = listener;
+	}
 
 	public void setModified ( boolean modified )
 	{
-		this.modified = modified;
+		if ( store == null )
+			this.modified = modified;
+		else
+			store.setModified( id, modified );
+
 		this.domain.setModified( modified );
 	}
 
@@ -133,10 +203,14 @@ public class Variable implements Iterable<Integer>
 		if ( ! changeable )
 			return;
 
-		setDomain( new Domain( val ) );
+		int oldSize = size();
+		domain.clear();
+		domain.add( val );
+		setFlag( true );
+		notifyListener( oldSize );
 	}
 
-	// Sets the domain of the variable
+	// Sets the domain of the variable to the values of d, in place
 	public void setDomain ( Domain d )
 	{
 		if ( ! changeable )
@@ -144,19 +218,53 @@ public class Variable implements Iterable<Integer>
 
 		if ( ! domain.equals( d ) )
 		{
-			domain = d;
-			modified = true;
+			int oldSize = size();
+			domain.setValues( d );
+			setFlag( true );
+			notifyListener( oldSize );
 		}
 	}
 
+	/**
+	 * Restores the domain in place from count words of src at offset,
+	 * as saved by Trail.push, and clears the modified flag.
+	 */
+	public void restoreDomain ( long[] src, int offset, int count )
+	{
+		if ( ! changeable )
+			return;
+
+		int oldSize = size();
+		domain.setWords( src, offset, count );
+		setModified( false );
+		notifyListener( oldSize );
+	}
+
 	// Removes a value from the domain
 	public void removeValueFromDomain ( int val )
 	{
 		if ( ! changeable )
 			return;
 
-		domain.remove( val );
-		this.modified = domain.isModified();
+		if ( domain.remove( val ) )
+			notifyListener( size() + 1 );
+
+		setFlag( domain.isModified() );
+	}
+
+	// Sets the modified flag of the variable only, not of its domain
+	private void setFlag ( boolean modified )
+	{
+		if ( store == null )
+			this.modified = modified;
+		else
+			store.setModified( id, modified );
+	}
+
+	private void notifyListener ( int oldSize )
+	{
+		if ( listener != null && oldSize != size() )
+			listener.domainChanged( this, oldSize );
 	}
 
 	// =================================================================
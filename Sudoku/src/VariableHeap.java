@@ -0,0 +1,238 @@
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Indexed binary min-heap over the unassigned variables of a network,
+ * keyed on domain size. With the degree tie breaker enabled, variables
+ * with more unassigned neighbors come first among equal domain sizes.
+ * Remaining ties go to the lower rank, which is the variable order.
+ *
+ * The heap listens to every variable, so assignments, prunings and
+ * Trail.undo restores update it in place and the next variable is
+ * always at the top.
+ */
+
+public class VariableHeap implements DomainListener
+{
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	private ConstraintNetwork network;
+	private List<Variable> variables;
+	private boolean useDegree;
+
+	private int[] heap;      // variable ids
+	private int[] position;  // index of each variable in heap, -1 if absent
+	private int size;
+
+	private int[] degree;    // number of unassigned neighbors
+	private int[] rank;      // last tie breaker
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	public VariableHeap ( ConstraintNetwork network, boolean useDegree )
+	{
+		this.network   = network;
+		this.variables = network.getVariables();
+		this.useDegree = useDegree;
+
+		int n = variables.size();
+		heap     = new int[n];
+		position = new int[n];
+		degree   = new int[n];
+		rank     = new int[n];
+
+		for ( int id = 0; id < n; ++id )
+			rank[id] = id;
+
+		rebuild();
+
+		for ( Variable v : variables )
+			v.setDomainListener( this );
+	}
+
+	// =================================================================
+	// Accessors
+	// =================================================================
+
+	// Returns the unassigned variable with the smallest key, or null
+	public Variable peek ( )
+	{
+		return size == 0 ? null : variables.get( heap[0] );
+	}
+
+	public int size ( )
+	{
+		return size;
+	}
+
+	// =================================================================
+	// Modifiers
+	// =================================================================
+
+	// Recomputes the degrees and the heap from the current domains
+	public void rebuild ( )
+	{
+		size = 0;
+		for ( Variable v : variables )
+		{
+			int id = v.getId();
+			position[id] = -1;
+			degree[id] = 0;
+
+			for ( Variable neighbor : network.getNeighborsOfVariable( v ) )
+				if ( ! neighbor.isAssigned() )
+					degree[id]++;
+
+			if ( ! v.isAssigned() )
+			{
+				heap[size] = id;
+				position[id] = size++;
+			}
+		}
+
+		for ( int i = size / 2 - 1; i >= 0; --i )
+			siftDown( i );
+	}
+
+	// Breaks the remaining ties in a new random order
+	public void shuffleRanks ( Random random )
+	{
+		for ( int i = rank.length - 1; i > 0; --i )
+		{
+			int j = random.nextInt( i + 1 );
+			int swap = rank[i];
+			rank[i] = rank[j];
+			rank[j] = swap;
+		}
+
+		rebuild();
+	}
+
+	// Stops listening to the variables of the network
+	public void detach ( )
+	{
+		for ( Variable v : variables )
+			v.setDomainListener( null );
+	}
+
+	@Override
+	public void domainChanged ( Variable v, int oldSize )
+	{
+		int id = v.getId();
+		boolean wasAssigned = oldSize == 1;
+		boolean isAssigned  = v.isAssigned();
+
+		if ( wasAssigned == isAssigned )
+		{
+			if ( position[id] >= 0 )
+				update( position[id] );
+			return;
+		}
+
+		if ( isAssigned )
+			remove( id );
+		else
+			insert( id );
+
+		// The variable entered or left the unassigned neighbors of others
+		int delta = isAssigned ? -1 : 1;
+		for ( Variable neighbor : network.getNeighborsOfVariable( v ) )
+		{
+			int nid = neighbor.getId();
+			degree[nid] += delta;
+
+			if ( useDegree && position[nid] >= 0 )
+				update( position[nid] );
+		}
+	}
+
+	// =================================================================
+	// Heap Operations
+	// =================================================================
+
+	private void insert ( int id )
+	{
+		heap[size] = id;
+		position[id] = size;
+		siftUp( size++ );
+	}
+
+	private void remove ( int id )
+	{
+		int i = position[id];
+		position[id] = -1;
+
+		if ( --size == i )
+			return;
+
+		heap[i] = heap[size];
+		position[heap[i]] = i;
+		update( i );
+	}
+
+	private void update ( int i )
+	{
+		if ( i > 0 && less( heap[i], heap[( i - 1 ) / 2] ) )
+			siftUp( i );
+		else
+			siftDown( i );
+	}
+
+	private void siftUp ( int i )
+	{
+		int id = heap[i];
+		while ( i > 0 )
+		{
+			int parent = ( i - 1 ) / 2;
+			if ( ! less( id, heap[parent] ) )
+				break;
+
+			heap[i] = heap[parent];
+			position[heap[i]] = i;
+			i = parent;
+		}
+		heap[i] = id;
+		position[id] = i;
+	}
+
+	private void siftDown ( int i )
+	{
+		int id = heap[i];
+		while ( true )
+		{
+			int child = 2 * i + 1;
+			if ( child >= size )
+				break;
+
+			if ( child + 1 < size && less( heap[child + 1], heap[child] ) )
+				child++;
+
+			if ( ! less( heap[child], id ) )
+				break;
+
+			heap[i] = heap[child];
+			position[heap[i]] = i;
+			i = child;
+		}
+		heap[i] = id;
+		position[id] = i;
+	}
+
+	// Orders by domain size, then degree (if enabled), then rank
+	private boolean less ( int a, int b )
+	{
+		int sizeA = variables.get( a ).size();
+		int sizeB = variables.get( b ).size();
+		if ( sizeA != sizeB )
+			return sizeA < sizeB;
+
+		if ( useDegree && degree[a] != degree[b] )
+			return degree[a] > degree[b];
+
+		return rank[a] < rank[b];
+	}
+}
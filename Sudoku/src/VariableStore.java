@@ -0,0 +1,161 @@
+/**
+ * Struct-of-arrays storage for the variables of a board network.
+ *
+ * Everything a cell needs during search is kept in primitive arrays indexed
+ * by its cell id: the domain bitmasks (wordsPerCell consecutive words per
+ * cell), the row, column and block, and the modified flag. The assignment is
+ * read from the domain, a cell is assigned when one bit is left.
+ *
+ * Variables created over a store are views: their Domain reads and writes
+ * the store's words and their row, column, block and modified flag come
+ * from the store, so scans by cell id never touch a Variable object.
+ */
+
+public class VariableStore
+{
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	private static final int WORD_BITS = 64;
+
+	private int cells;
+	private int wordsPerCell;
+
+	private long[] domains;
+	private int[] rows;
+	private int[] cols;
+	private int[] blocks;
+	private boolean[] modified;
+
+	// =================================================================
+	// Constructors
+	// =================================================================
+
+	// Storage for cells cells whose values are in 1..maxValue
+	public VariableStore ( int cells, int maxValue )
+	{
+		this.cells = cells;
+		this.wordsPerCell = Math.max( 1, ( maxValue + WORD_BITS - 1 ) / WORD_BITS );
+		this.domains = new long[cells * wordsPerCell];
+		this.rows = new int[cells];
+		this.cols = new int[cells];
+		this.blocks = new int[cells];
+		this.modified = new boolean[cells];
+	}
+
+	// Copy Constructor, the copy gets its own domains and modified flags.
+	// The row, column and block tables never change and are shared.
+	public VariableStore ( VariableStore other )
+	{
+		this.cells = other.cells;
+		this.wordsPerCell = other.wordsPerCell;
+		this.domains = other.domains.clone();
+		this.rows = other.rows;
+		this.cols = other.cols;
+		this.blocks = other.blocks;
+		this.modified = other.modified.clone();
+	}
+
+	// =================================================================
+	// Accessors
+	// =================================================================
+
+	public int cellCount ( )
+	{
+		return cells;
+	}
+
+	public int wordsPerCell ( )
+	{
+		return wordsPerCell;
+	}
+
+	public int row ( int cell )
+	{
+		return rows[cell];
+	}
+
+	public int col ( int cell )
+	{
+		return cols[cell];
+	}
+
+	public int block ( int cell )
+	{
+		return blocks[cell];
+	}
+
+	public boolean isModified ( int cell )
+	{
+		return modified[cell];
+	}
+
+	// Checks if value is in the domain of cell
+	public boolean contains ( int cell, int value )
+	{
+		int bit = value - 1;
+		if ( bit < 0 || bit >= wordsPerCell * WORD_BITS )
+			return false;
+
+		return ( domains[cell * wordsPerCell + bit / WORD_BITS] & ( 1L << bit ) ) != 0;
+	}
+
+	// Returns word w of the domain of cell
+	public long getWord ( int cell, int w )
+	{
+		return domains[cell * wordsPerCell + w];
+	}
+
+	// Returns the number of values in the domain of cell
+	public int size ( int cell )
+	{
+		int start = cell * wordsPerCell;
+		int count = 0;
+		for ( int w = start; w < start + wordsPerCell; ++w )
+			count += Long.bitCount( domains[w] );
+
+		return count;
+	}
+
+	public boolean isAssigned ( int cell )
+	{
+		return size( cell ) == 1;
+	}
+
+	// Returns the assigned value of cell or 0 if unassigned
+	public int getAssignment ( int cell )
+	{
+		if ( ! isAssigned( cell ) )
+			return 0;
+
+		int start = cell * wordsPerCell;
+		for ( int w = 0; w < wordsPerCell; ++w )
+			if ( domains[start + w] != 0 )
+				return w * WORD_BITS + Long.numberOfTrailingZeros( domains[start + w] ) + 1;
+
+		return 0;
+	}
+
+	// =================================================================
+	// Modifiers
+	// =================================================================
+
+	void setCell ( int cell, int row, int col, int block )
+	{
+		rows[cell] = row;
+		cols[cell] = col;
+		blocks[cell] = block;
+	}
+
+	void setModified ( int cell, boolean modified )
+	{
+		this.modified[cell] = modified;
+	}
+
+	// Returns a Domain reading and writing the words of cell
+	Domain domainView ( int cell )
+	{
+		return new Domain( domains, cell * wordsPerCell, wordsPerCell );
+	}
+}
@@ -0,0 +1,144 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks of AllDifferent: a Hall set that only Regin's matching finds,
+ * failures, trail restores, and generalized arc consistency on random
+ * constraints against the values that appear in some solution.
+ */
+
+public class AllDifferentTest
+{
+	static void run ( )
+	{
+		hallSet();
+		failure();
+		againstSolutions();
+	}
+
+	// =================================================================
+	// Checks
+	// =================================================================
+
+	// {1,2},{2,3},{1,3} use up 1..3, no pair or single shows it
+	private static void hallSet ( )
+	{
+		int[][] domains = { { 1, 2 }, { 2, 3 }, { 1, 3 }, { 1, 2, 3, 4, 5 }, { 1, 2, 3, 4, 5 } };
+
+		List<Variable> vars = variables( domains );
+		Tests.check( new AllDifferent( new Trail(), false ).propagate( new Constraint( vars ), new ArrayList<Variable>() ),
+		             "subsets only: consistent" );
+		Tests.checkEquals( "{1,2,3,4,5}", vars.get( 3 ).getDomain().toString(), "subsets only: no pruning" );
+
+		Trail trail = new Trail();
+		vars = variables( domains );
+		List<Variable> changed = new ArrayList<Variable>();
+		trail.placeTrailMarker();
+
+		Tests.check( new AllDifferent( trail, true ).propagate( new Constraint( vars ), changed ), "matching: consistent" );
+		Tests.checkEquals( "{4,5}", vars.get( 3 ).getDomain().toString(), "matching prunes the Hall set" );
+		Tests.checkEquals( "{4,5}", vars.get( 4 ).getDomain().toString(), "matching prunes the Hall set" );
+		Tests.checkEquals( 2, changed.size(), "changed variables" );
+
+		trail.undo();
+		Tests.checkEquals( "{1,2,3,4,5}", vars.get( 3 ).getDomain().toString(), "undo restores the domain" );
+	}
+
+	private static void failure ( )
+	{
+		int[][] pigeons = { { 1, 2 }, { 1, 2 }, { 1, 2 } };
+		Tests.check( ! new AllDifferent( new Trail(), true ).propagate( new Constraint( variables( pigeons ) ),
+		                                                             new ArrayList<Variable>() ),
+		             "three variables on two values fail" );
+
+		// Values above 127 are not cached Integers
+		int[][] twice = { { 200 }, { 200 } };
+		Tests.check( ! new Constraint( variables( twice ) ).isConsistent(), "a repeated value above 127 is inconsistent" );
+	}
+
+	// With matching, a value is kept exactly when some solution uses it
+	private static void againstSolutions ( )
+	{
+		Random random = new Random( 5 );
+		int mismatches = 0;
+
+		for ( int round = 0; round < 2000; ++round )
+		{
+			int k = 2 + random.nextInt( 5 );
+			int n = k + random.nextInt( 3 );
+			int[][] domains = new int[k][];
+
+			for ( int x = 0; x < k; ++x )
+			{
+				List<Integer> values = new ArrayList<Integer>();
+				for ( int a = 1; a <= n; ++a )
+					if ( random.nextInt( 3 ) > 0 )
+						values.add( a );
+
+				if ( values.isEmpty() )
+					values.add( 1 + random.nextInt( n ) );
+
+				domains[x] = new int[values.size()];
+				for ( int i = 0; i < values.size(); ++i )
+					domains[x][i] = values.get( i );
+			}
+
+			boolean[][] supported = new boolean[k][n + 1];
+			boolean solvable = enumerate( domains, 0, new boolean[n + 1], new int[k], supported );
+
+			List<Variable> vars = variables( domains );
+			boolean consistent = new AllDifferent( new Trail(), true ).propagate( new Constraint( vars ),
+			                                                                      new ArrayList<Variable>() );
+			if ( consistent != solvable )
+			{
+				mismatches++;
+				continue;
+			}
+
+			for ( int x = 0; solvable && x < k; ++x )
+				for ( int a = 1; a <= n; ++a )
+					if ( vars.get( x ).getDomain().contains( a ) != supported[x][a] )
+						mismatches++;
+		}
+
+		Tests.checkEquals( 0, mismatches, "values kept by matching differ from the supported values" );
+	}
+
+	// =================================================================
+	// Helpers
+	// =================================================================
+
+	private static List<Variable> variables ( int[][] domains )
+	{
+		List<Variable> vars = new ArrayList<Variable>();
+		for ( int x = 0; x < domains.length; ++x )
+			vars.add( new Variable( new Domain( domains[x] ), 0, x, 0 ) );
+
+		return vars;
+	}
+
+	// Marks the values of every solution in supported, returns whether there is one
+	private static boolean enumerate ( int[][] domains, int x, boolean[] used, int[] chosen, boolean[][] supported )
+	{
+		if ( x == domains.length )
+		{
+			for ( int i = 0; i < x; ++i )
+				supported[i][chosen[i]] = true;
+			return true;
+		}
+
+		boolean found = false;
+		for ( int a : domains[x] )
+		{
+			if ( used[a] )
+				continue;
+
+			used[a] = true;
+			chosen[x] = a;
+			found |= enumerate( domains, x + 1, used, chosen, supported );
+			used[a] = false;
+		}
+		return found;
+	}
+}
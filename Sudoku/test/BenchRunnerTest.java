@@ -0,0 +1,184 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks of the BENCH regression gate: a run faster than the baseline
+ * passes, a slower run or a board no longer solved fails, and the
+ * baseline is never overwritten by the results. Also the percentiles
+ * left out for too few trials and the escaping of names in the JSON.
+ */
+
+public class BenchRunnerTest
+{
+	private static final List<String> COMBINATION = Arrays.asList( "MRV FC" );
+
+	static void run ( ) throws IOException
+	{
+		File dir = File.createTempFile( "bench", "" );
+		dir.delete();
+		dir.mkdir();
+
+		PrintStream out = System.out;
+		try
+		{
+			System.setOut( new PrintStream( new ByteArrayOutputStream() ) );
+			gate( dir );
+			percentiles();
+			jsonNames( dir );
+		}
+		finally
+		{
+			System.setOut( out );
+
+			for ( File f : dir.listFiles() )
+				f.delete();
+			dir.delete();
+		}
+	}
+
+	// =================================================================
+	// Checks
+	// =================================================================
+
+	private static void gate ( File dir ) throws IOException
+	{
+		File[] boards = { new File( dir, "a.txt" ), new File( dir, "b.txt" ) };
+		write( boards[0], board( 3, 3, 1 ) );
+		write( boards[1], board( 2, 2, 2 ) );
+
+		File baseline = new File( dir, "base.csv" );
+		BenchRunner runner = new BenchRunner( 0, 3, 10000 );
+		runner.setOutput( baseline.getPath(), null );
+		Tests.checkEquals( 0, runner.run( boards, COMBINATION ), "regressions without a baseline" );
+
+		List<BenchRunner.Result> rows = BenchRunner.readCsv( baseline.getPath() );
+		Tests.checkEquals( 2, rows.size(), "rows read back" );
+		Tests.checkEquals( "solved", rows.get( 0 ).status, "status read back" );
+
+		// Against a baseline 1000 times slower, then one much faster
+		File slow = new File( dir, "slow.csv" );
+		File fast = new File( dir, "fast.csv" );
+		writeBaseline( slow, rows, 1000 );
+		writeBaseline( fast, rows, 0 );
+
+		runner = new BenchRunner( 0, 3, 10000 );
+		runner.setOutput( new File( dir, "run.csv" ).getPath(), null );
+		runner.setBaseline( slow.getPath(), 0.10 );
+		Tests.checkEquals( 0, runner.run( boards, COMBINATION ), "regressions against a slower baseline" );
+
+		runner = new BenchRunner( 0, 3, 10000 );
+		runner.setOutput( new File( dir, "run.csv" ).getPath(), null );
+		runner.setBaseline( fast.getPath(), 0.10 );
+		Tests.checkEquals( 1, runner.run( boards, COMBINATION ), "regressions against a faster baseline" );
+
+		// a.txt breaks the row rule now, in a baseline of the older 10 column format
+		write( boards[0], board( 3, 3, 1 ).replaceFirst( "0 0", "1 1" ) );
+		File solved = new File( dir, "solved.csv" );
+		write( solved, "MRV FC,a.txt,solved,3,1.000,1.000,1.000,10,10,0\n" );
+
+		runner = new BenchRunner( 0, 1, 10000 );
+		runner.setOutput( new File( dir, "now.csv" ).getPath(), null );
+		runner.setBaseline( solved.getPath(), 10.0 );
+		Tests.checkEquals( 1, runner.run( boards, COMBINATION ), "a board no longer solved is a regression" );
+
+		// The results must not replace the baseline
+		long length = baseline.length();
+		runner = new BenchRunner( 0, 1, 10000 );
+		runner.setOutput( baseline.getPath(), null );
+		runner.setBaseline( baseline.getPath(), 0.10 );
+
+		boolean threw = false;
+		try
+		{
+			runner.run( boards, COMBINATION );
+		}
+		catch ( IOException e )
+		{
+			threw = true;
+		}
+
+		Tests.check( threw, "an output path equal to the baseline is refused" );
+		Tests.checkEquals( length, baseline.length(), "the baseline is unchanged" );
+	}
+
+	private static void percentiles ( )
+	{
+		double[] five = { 1, 2, 3, 4, 5 };
+		Tests.checkEquals( 3.0, BenchRunner.percentile( five, 50 ), "p50 of 5 trials" );
+		Tests.check( Double.isNaN( BenchRunner.percentile( five, 95 ) ), "no p95 from 5 trials" );
+
+		double[] twenty = new double[20];
+		for ( int i = 0; i < 20; ++i )
+			twenty[i] = i + 1;
+
+		Tests.checkEquals( 19.0, BenchRunner.percentile( twenty, 95 ), "p95 of 20 trials" );
+		Tests.check( Double.isNaN( BenchRunner.percentile( twenty, 99 ) ), "no p99 from 20 trials" );
+	}
+
+	private static void jsonNames ( File dir ) throws IOException
+	{
+		File board = new File( dir, "q\"b\\c.txt" );
+		write( board, board( 2, 2, 1 ) );
+
+		File json = new File( dir, "run.json" );
+		BenchRunner runner = new BenchRunner( 0, 1, 10000 );
+		runner.setOutput( null, json.getPath() );
+		runner.run( new File[] { board }, COMBINATION );
+
+		String text = new String( Files.readAllBytes( json.toPath() ), StandardCharsets.UTF_8 );
+		Tests.check( text.contains( "\"board\": \"q\\\"b\\\\c.txt\"" ), "quote and backslash escaped in the JSON" );
+		Tests.checkEquals( "a\\u0009b\\u000a", BenchRunner.json( "a\tb\n" ), "control characters escaped" );
+	}
+
+	// =================================================================
+	// Helpers
+	// =================================================================
+
+	// An empty p x q board with value at its top left cell
+	private static String board ( int p, int q, int value )
+	{
+		int n = p * q;
+		StringBuilder sb = new StringBuilder( p + " " + q + "\n" );
+
+		for ( int i = 0; i < n; ++i )
+		{
+			for ( int j = 0; j < n; ++j )
+				sb.append( i == 0 && j == 0 ? value : 0 ).append( j < n - 1 ? " " : "\n" );
+		}
+
+		return sb.toString();
+	}
+
+	// Writes rows as a baseline with their p50 times scaled, or 1 ns each for a scale of 0
+	private static void writeBaseline ( File file, List<BenchRunner.Result> rows, double scale ) throws IOException
+	{
+		StringBuilder csv = new StringBuilder( "combination,board,status,trials,p50_ms,p95_ms,p99_ms,max_ms,nodes,pushes,backtracks\n" );
+		for ( BenchRunner.Result r : rows )
+			csv.append( r.combination ).append( ',' ).append( r.board ).append( ",solved,3," )
+			   .append( scale > 0 ? r.p50 * scale : 1e-6 ).append( ",,," ).append( r.max )
+			   .append( ',' ).append( r.nodes ).append( ',' ).append( r.pushes )
+			   .append( ',' ).append( r.backtracks ).append( '\n' );
+
+		write( file, csv.toString() );
+	}
+
+	private static void write ( File file, String text ) throws IOException
+	{
+		FileWriter out = new FileWriter( file );
+		try
+		{
+			out.write( text );
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+}
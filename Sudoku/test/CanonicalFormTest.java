@@ -0,0 +1,169 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks of CanonicalForm: every variant of a puzzle under the Sudoku
+ * symmetries has the same form, and a solution mapped through the form of
+ * one variant and back through another solves that other variant.
+ */
+
+public class CanonicalFormTest
+{
+	static void run ( )
+	{
+		Random random = new Random( 25 );
+
+		invariance( 3, 3, random );
+		invariance( 2, 3, random );
+		invariance( 3, 2, random );
+	}
+
+	// =================================================================
+	// Checks
+	// =================================================================
+
+	private static void invariance ( int p, int q, Random random )
+	{
+		String size = p + "x" + q + ": ";
+		SudokuBoard solution = solvedGrid( p, q );
+		SudokuBoard puzzle = puzzleOf( solution, 2 * p * q + 8, random );
+		CanonicalForm form = CanonicalForm.of( puzzle );
+
+		Tests.check( form.isReduced(), size + "the form is reduced" );
+
+		int[] canonical = form.toCanonical( solution );
+		Tests.check( same( solution, form.fromCanonical( canonical ) ), size + "fromCanonical undoes toCanonical" );
+
+		int differing = 0, unsolved = 0;
+		for ( int k = 0; k < 200; ++k )
+		{
+			int[][] transform = randomTransform( p, q, random );
+			SudokuBoard variant = apply( puzzle, transform );
+			CanonicalForm variantForm = CanonicalForm.of( variant );
+
+			if ( ! variantForm.equals( form ) || ! Arrays.equals( variantForm.getCells(), form.getCells() ) )
+				differing++;
+
+			if ( ! SolutionCache.solves( variantForm.fromCanonical( canonical ), variant ) )
+				unsolved++;
+		}
+
+		Tests.checkEquals( 0, differing, size + "variants with another form" );
+		Tests.checkEquals( 0, unsolved, size + "variants the mapped solution does not solve" );
+
+		// Another given is another puzzle, not a variant
+		SudokuBoard other = puzzleOf( solution, 2 * p * q + 9, new Random( 1 ) );
+		Tests.check( ! CanonicalForm.of( other ).equals( form ), size + "a different puzzle has another form" );
+	}
+
+	// =================================================================
+	// Helpers
+	// =================================================================
+
+	// The grid the solver fills an empty board with
+	private static SudokuBoard solvedGrid ( int p, int q )
+	{
+		int n = p * q;
+		BTSolver solver = new BTSolver( new SudokuBoard( p, q, new int[n][n] ), new Trail(),
+		                                "", "MinimumRemainingValue", "forwardChecking" );
+		solver.solve();
+		return solver.getSolution();
+	}
+
+	// Keeps count random cells of solution
+	private static SudokuBoard puzzleOf ( SudokuBoard solution, int count, Random random )
+	{
+		int n = solution.getN();
+		int[][] cells = new int[n][n];
+
+		for ( int kept = 0; kept < count; )
+		{
+			int i = random.nextInt( n ), j = random.nextInt( n );
+			if ( cells[i][j] == 0 )
+			{
+				cells[i][j] = solution.getBoard()[i][j];
+				kept++;
+			}
+		}
+
+		return new SudokuBoard( solution.getP(), solution.getQ(), cells );
+	}
+
+	/**
+	 * A random symmetry: { row order, column order, digit labels, { 1 to
+	 * transpose } }. Rows move within their band and bands as a whole,
+	 * columns likewise within stacks, and only square blocks transpose.
+	 */
+	private static int[][] randomTransform ( int p, int q, Random random )
+	{
+		int n = p * q;
+		int[] labels = new int[n + 1];
+		int[] digits = permutation( n, random );
+		for ( int v = 1; v <= n; ++v )
+			labels[v] = digits[v - 1] + 1;
+
+		int transpose = p == q && random.nextBoolean() ? 1 : 0;
+		return new int[][] { lines( q, p, random ), lines( p, q, random ), labels, { transpose } };
+	}
+
+	// Order of groups lines of size lines each, groups and lines within them shuffled
+	private static int[] lines ( int groups, int size, Random random )
+	{
+		int[] order = new int[groups * size];
+		int[] groupOrder = permutation( groups, random );
+
+		for ( int g = 0; g < groups; ++g )
+		{
+			int[] within = permutation( size, random );
+			for ( int l = 0; l < size; ++l )
+				order[g * size + l] = groupOrder[g] * size + within[l];
+		}
+
+		return order;
+	}
+
+	private static int[] permutation ( int k, Random random )
+	{
+		int[] a = new int[k];
+		for ( int i = 0; i < k; ++i )
+			a[i] = i;
+
+		for ( int i = k - 1; i > 0; --i )
+		{
+			int j = random.nextInt( i + 1 );
+			int swap = a[i];
+			a[i] = a[j];
+			a[j] = swap;
+		}
+
+		return a;
+	}
+
+	private static SudokuBoard apply ( SudokuBoard board, int[][] transform )
+	{
+		int n = board.getN();
+		int[][] from = board.getBoard();
+		int[][] to = new int[n][n];
+
+		for ( int i = 0; i < n; ++i )
+		{
+			for ( int j = 0; j < n; ++j )
+			{
+				int v = from[transform[0][i]][transform[1][j]];
+				int label = v == 0 ? 0 : transform[2][v];
+
+				if ( transform[3][0] == 1 )
+					to[j][i] = label;
+				else
+					to[i][j] = label;
+			}
+		}
+
+		return new SudokuBoard( board.getP(), board.getQ(), to );
+	}
+
+	private static boolean same ( SudokuBoard a, SudokuBoard b )
+	{
+		return Arrays.deepEquals( a.getBoard(), b.getBoard() );
+	}
+}
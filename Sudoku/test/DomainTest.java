@@ -0,0 +1,119 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Checks of the bitset Domain: one word up to value 64, several words
+ * above, views over a slice of words, and random edits against a TreeSet.
+ */
+
+public class DomainTest
+{
+	static void run ( )
+	{
+		singleWord();
+		multiWord();
+		views();
+		againstTreeSet( 9 );
+		againstTreeSet( 64 );
+		againstTreeSet( 200 );
+	}
+
+	// =================================================================
+	// Checks
+	// =================================================================
+
+	private static void singleWord ( )
+	{
+		Domain d = new Domain( new int[] { 3, 1, 64, 9 } );
+
+		Tests.checkEquals( 1, d.wordCount(), "words of 1..64" );
+		Tests.checkEquals( 4, d.size(), "size" );
+		Tests.checkEquals( "{1,3,9,64}", d.toString(), "ascending order" );
+		Tests.check( d.contains( 64 ) && ! d.contains( 65 ) && ! d.contains( 0 ), "contains at the edges" );
+		Tests.checkEquals( 64, d.next( 9 ), "next" );
+		Tests.checkEquals( 0, d.next( 64 ), "next after the last value" );
+
+		Tests.check( d.remove( 64 ) && ! d.remove( 64 ), "remove reports a change once" );
+		Tests.check( d.isModified(), "remove sets modified" );
+
+		d.clear();
+		Tests.check( d.isEmpty() && d.first() == 0, "clear" );
+	}
+
+	private static void multiWord ( )
+	{
+		Domain d = new Domain( 200 );
+		d.add( 1 );
+		d.add( 65 );
+		d.add( 128 );
+
+		Tests.checkEquals( 4, d.wordCount(), "words of 1..200" );
+		Tests.checkEquals( Arrays.asList( 1, 65, 128, 200 ), d.getValues(), "values across words" );
+		Tests.checkEquals( 128, d.next( 65 ), "next to a later word" );
+		Tests.check( ! d.contains( 1000 ), "contains beyond the words" );
+
+		Domain copy = new Domain( d );
+		copy.remove( 128 );
+		Tests.check( d.contains( 128 ), "a copy owns its words" );
+
+		// Fewer words than the domain clear the words above them
+		d.setWords( new long[] { 6L }, 0, 1 );
+		Tests.checkEquals( "{2,3}", d.toString(), "setWords with fewer words" );
+	}
+
+	private static void views ( )
+	{
+		long[] store = new long[4];
+		Domain view = new Domain( store, 1, 2 );
+		view.add( 1 );
+		view.add( 128 );
+
+		Tests.checkEquals( 1L, store[1], "view writes word 0 at its base" );
+		Tests.checkEquals( Long.MIN_VALUE, store[2], "view writes word 1 after it" );
+		Tests.check( store[0] == 0 && store[3] == 0, "view stays in its slice" );
+
+		boolean threw = false;
+		try
+		{
+			view.add( 129 );
+		}
+		catch ( IllegalArgumentException e )
+		{
+			threw = true;
+		}
+		Tests.check( threw, "a view cannot grow" );
+	}
+
+	// Random adds and removes give the same values as a TreeSet
+	private static void againstTreeSet ( int n )
+	{
+		Random random = new Random( n );
+		Domain d = new Domain( new int[0] );
+		TreeSet<Integer> expected = new TreeSet<Integer>();
+		boolean same = true;
+
+		for ( int step = 0; step < 5000 && same; ++step )
+		{
+			int v = 1 + random.nextInt( n );
+			if ( random.nextBoolean() )
+			{
+				d.add( v );
+				expected.add( v );
+			}
+			else
+				same = d.remove( v ) == expected.remove( v );
+
+			List<Integer> values = new ArrayList<Integer>();
+			for ( int x = d.first(); x != 0; x = d.next( x ) )
+				values.add( x );
+
+			same = same && values.equals( new ArrayList<Integer>( expected ) )
+			       && d.size() == expected.size() && d.isEmpty() == expected.isEmpty();
+		}
+
+		Tests.check( same, "random edits match a TreeSet for values up to " + n );
+	}
+}
@@ -0,0 +1,165 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks of the packed board format: boards of several sizes read back
+ * as written, in order and by index, a corrupt record is skipped, and
+ * damaged files are refused.
+ */
+
+public class PackedBoardTest
+{
+	static void run ( ) throws IOException
+	{
+		File file = File.createTempFile( "packed", ".sdkb" );
+		try
+		{
+			roundTrip( file );
+			corruptRecord( file );
+			damaged( file );
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	// =================================================================
+	// Checks
+	// =================================================================
+
+	private static void roundTrip ( File file ) throws IOException
+	{
+		int[][] blocks = { { 1, 1 }, { 2, 2 }, { 3, 3 }, { 2, 3 }, { 4, 4 }, { 5, 7 }, { 8, 8 }, { 3, 3 } };
+		Random random = new Random( 23 );
+		List<SudokuBoard> boards = new ArrayList<SudokuBoard>();
+
+		PackedBoardWriter writer = new PackedBoardWriter( file );
+		for ( int[] pq : blocks )
+		{
+			SudokuBoard board = randomBoard( pq[0], pq[1], random );
+			boards.add( board );
+			writer.add( board );
+		}
+		writer.close();
+
+		Tests.checkEquals( 43, PackedBoardWriter.recordLength( 9 ), "bytes of a 9x9 record" );
+		Tests.check( PackedBoardReader.isPacked( file ), "isPacked" );
+
+		PackedBoardReader reader = new PackedBoardReader( file );
+		try
+		{
+			Tests.checkEquals( boards.size(), reader.size(), "board count" );
+
+			int i = 0;
+			for ( SudokuBoard board : reader )
+				Tests.check( same( boards.get( i ), board ), "board " + i++ + " in order" );
+
+			for ( int k = boards.size() - 1; k >= 0; --k )
+				Tests.check( same( boards.get( k ), reader.get( k ) ), "board " + k + " by index" );
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	// Record 1 of three 9x9 boards gets cells of 15
+	private static void corruptRecord ( File file ) throws IOException
+	{
+		Random random = new Random( 9 );
+		PackedBoardWriter writer = new PackedBoardWriter( file );
+		for ( int k = 0; k < 3; ++k )
+			writer.add( randomBoard( 3, 3, random ) );
+		writer.close();
+
+		RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+		raf.seek( PackedBoardWriter.HEADER_SIZE + PackedBoardWriter.recordLength( 9 ) + 2 );
+		raf.write( new byte[] { (byte) 0xFF, (byte) 0xFF } );
+		raf.close();
+
+		PackedBoardReader reader = new PackedBoardReader( file );
+		try
+		{
+			List<Integer> read = new ArrayList<Integer>();
+			List<Integer> corrupt = new ArrayList<Integer>();
+			Iterator<SudokuBoard> it = reader.iterator();
+
+			while ( it.hasNext() )
+			{
+				try
+				{
+					it.next();
+					read.add( reader.getPosition() );
+				}
+				catch ( IllegalArgumentException e )
+				{
+					corrupt.add( reader.getPosition() );
+				}
+			}
+
+			Tests.checkEquals( Arrays.asList( 0, 2 ), read, "boards read around the corrupt one" );
+			Tests.checkEquals( Arrays.asList( 1 ), corrupt, "corrupt boards" );
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	private static void damaged ( File file ) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+		raf.setLength( raf.length() - 1 );
+		raf.close();
+		Tests.check( refused( file ), "a truncated file is refused" );
+
+		FileWriter text = new FileWriter( file );
+		text.write( "3 3\n" );
+		text.close();
+		Tests.check( ! PackedBoardReader.isPacked( file ), "a text board is not packed" );
+		Tests.check( refused( file ), "a text board is refused" );
+	}
+
+	// =================================================================
+	// Helpers
+	// =================================================================
+
+	// Cells from 0 to N, not a valid puzzle, which packing does not need
+	private static SudokuBoard randomBoard ( int p, int q, Random random )
+	{
+		int n = p * q;
+		int[][] cells = new int[n][n];
+		for ( int[] row : cells )
+			for ( int j = 0; j < n; ++j )
+				row[j] = random.nextInt( n + 1 );
+
+		cells[0][0] = n;
+		return new SudokuBoard( p, q, cells );
+	}
+
+	private static boolean same ( SudokuBoard a, SudokuBoard b )
+	{
+		return a.getP() == b.getP() && a.getQ() == b.getQ() && Arrays.deepEquals( a.getBoard(), b.getBoard() );
+	}
+
+	private static boolean refused ( File file )
+	{
+		try
+		{
+			new PackedBoardReader( file ).close();
+			return false;
+		}
+		catch ( IOException e )
+		{
+			return true;
+		}
+	}
+}
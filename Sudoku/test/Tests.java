@@ -0,0 +1,86 @@
+import java.io.PrintStream;
+
+/**
+ * Runs the checks in Sudoku/test. They need nothing but the JDK, from the
+ * Sudoku directory:
+ *
+ *     javac -d out src/*.java test/*.java
+ *     java -cp out Tests
+ *
+ * Each check class has a static run() that calls check() once per
+ * condition. Failures are printed and make the exit status 1, an
+ * exception ends the run.
+ */
+
+public class Tests
+{
+	// =================================================================
+	// Properties
+	// =================================================================
+
+	// Checks may redirect System.out, the report goes to the original
+	private static final PrintStream OUT = System.out;
+
+	private static int checks;
+	private static int failures;
+	private static String suite;
+
+	// =================================================================
+	// Main
+	// =================================================================
+
+	public static void main ( String[] args )
+	{
+		// A check that throws ends the run as a failure of its suite
+		try
+		{
+			suite = "Domain";
+			DomainTest.run();
+
+			suite = "AllDifferent";
+			AllDifferentTest.run();
+
+			suite = "VariableHeap";
+			VariableHeapTest.run();
+
+			suite = "PackedBoard";
+			PackedBoardTest.run();
+
+			suite = "CanonicalForm";
+			CanonicalFormTest.run();
+
+			suite = "BenchRunner";
+			BenchRunnerTest.run();
+		}
+		catch ( Exception e )
+		{
+			failures++;
+			OUT.println( "FAIL " + suite + ": threw " + e );
+		}
+
+		OUT.println( checks + " checks, " + failures + " failed" );
+		if ( failures > 0 )
+			System.exit( 1 );
+	}
+
+	// =================================================================
+	// Checks
+	// =================================================================
+
+	static void check ( boolean condition, String what )
+	{
+		checks++;
+
+		if ( ! condition )
+		{
+			failures++;
+			OUT.println( "FAIL " + suite + ": " + what );
+		}
+	}
+
+	static void checkEquals ( Object expected, Object actual, String what )
+	{
+		boolean equal = expected == null ? actual == null : expected.equals( actual );
+		check( equal, what + ": expected " + expected + ", got " + actual );
+	}
+}
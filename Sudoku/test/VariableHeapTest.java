@@ -0,0 +1,100 @@
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks of VariableHeap: after random prunings, assignments and trail
+ * undos, the top of the heap is the variable a full scan would pick.
+ */
+
+public class VariableHeapTest
+{
+	static void run ( )
+	{
+		againstScan( false );
+		againstScan( true );
+	}
+
+	// =================================================================
+	// Checks
+	// =================================================================
+
+	private static void againstScan ( boolean useDegree )
+	{
+		ConstraintNetwork network = new ConstraintNetwork( new SudokuBoard( 3, 3, 12 ) );
+		VariableHeap heap = new VariableHeap( network, useDegree );
+		List<Variable> vars = network.getVariables();
+		Trail trail = new Trail();
+		Random random = new Random( 6 );
+		String mode = useDegree ? "MRV with degree" : "MRV";
+		int wrongTop = 0, wrongSize = 0;
+
+		for ( int step = 0; step < 5000; ++step )
+		{
+			if ( trail.size() > 0 && random.nextInt( 4 ) == 0 )
+				trail.undo();
+			else
+			{
+				Variable v = vars.get( random.nextInt( vars.size() ) );
+				if ( v.isAssigned() )
+					continue;
+
+				trail.placeTrailMarker();
+				trail.push( v );
+
+				List<Integer> values = v.getValues();
+				if ( random.nextBoolean() )
+					v.assignValue( values.get( random.nextInt( values.size() ) ) );
+				else
+					v.removeValueFromDomain( values.get( random.nextInt( values.size() ) ) );
+			}
+
+			Variable expected = scan( network, useDegree );
+			if ( heap.peek() != expected )
+				wrongTop++;
+
+			int unassigned = 0;
+			for ( Variable v : vars )
+				if ( ! v.isAssigned() )
+					unassigned++;
+
+			if ( heap.size() != unassigned )
+				wrongSize++;
+		}
+
+		Tests.checkEquals( 0, wrongTop, mode + ": steps where the top is not the scanned minimum" );
+		Tests.checkEquals( 0, wrongSize, mode + ": steps where the size is not the unassigned count" );
+
+		heap.detach();
+	}
+
+	// =================================================================
+	// Helpers
+	// =================================================================
+
+	// Smallest domain, then most unassigned neighbors if useDegree, then lowest id
+	private static Variable scan ( ConstraintNetwork network, boolean useDegree )
+	{
+		Variable best = null;
+		int bestDegree = 0;
+
+		for ( Variable v : network.getVariables() )
+		{
+			if ( v.isAssigned() )
+				continue;
+
+			int degree = 0;
+			for ( Variable neighbor : network.getNeighborsOfVariable( v ) )
+				if ( ! neighbor.isAssigned() )
+					degree++;
+
+			if ( best == null || v.size() < best.size()
+			     || ( v.size() == best.size() && useDegree && degree > bestDegree ) )
+			{
+				best = v;
+				bestDegree = degree;
+			}
+		}
+
+		return best;
+	}
+}